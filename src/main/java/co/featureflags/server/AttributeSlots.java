@@ -0,0 +1,183 @@
+package co.featureflags.server;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The dense slots of the user attributes read by the clauses of the flags and segments of a client, built for
+ * a version of the data storage.
+ * <p>
+ * The slot of a clause is found in an open-addressing table indexed by the id given to the clause when it's compiled:
+ * the table holds the clause owning each entry and the slot of its attribute, so that the lookup reads arrays and
+ * never hashes the attribute name. The ids of the clauses compiled together are consecutive and at most half of the
+ * entries are used, a lookup usually reads a single entry. A clause unknown to the table, e.g. compiled after the
+ * table was built, reads its attribute from the user.
+ * <p>
+ * A table is immutable. It's built when the data are loaded; when a flag or a segment is updated, its clauses replace
+ * the previous ones in a copy of the table, until the table is too full and is built again from all the data.
+ * See {@link PreparedUser}.
+ */
+final class AttributeSlots {
+
+    static final AttributeSlots EMPTY = new AttributeSlots(-1L, ImmutableMap.of(), new EvaluationPlan.Clause[1], new int[1], 0);
+
+    private static final EvaluationPlan.Rule[] NO_RULES = new EvaluationPlan.Rule[0];
+
+    final long version;
+    // the number of attribute slots
+    final int count;
+    // attribute name -> slot, only read when the table is updated
+    private final Map<String, Integer> names;
+    // clause id & mask, then the next entries -> the clause owning the entry and the slot of its attribute, -1 if
+    // the clause was removed; the entry of a removed clause can be reused by another one
+    private final EvaluationPlan.Clause[] clauses;
+    private final int[] slots;
+    private final int mask;
+    // the number of entries in use, including the removed clauses; at most half of the entries
+    private final int used;
+
+    private AttributeSlots(long version, Map<String, Integer> names, EvaluationPlan.Clause[] clauses, int[] slots, int used) {
+        this.version = version;
+        this.names = names;
+        this.count = names.size();
+        this.clauses = clauses;
+        this.slots = slots;
+        this.mask = clauses.length - 1;
+        this.used = used;
+    }
+
+    /**
+     * @return the slot of the attribute read by a clause, -1 if the clause doesn't read any or it's unknown to this
+     * table
+     */
+    int slotOf(EvaluationPlan.Clause clause) {
+        int index = clause.id & mask;
+        EvaluationPlan.Clause owner;
+        while ((owner = clauses[index]) != null) {
+            if (owner == clause) {
+                return slots[index];
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the table where the clauses of an updated flag or segment replace the previous ones, null if the table
+     * is too full and must be built again
+     */
+    AttributeSlots update(DataModel.TimestampData previous, DataModel.TimestampData current, long version) {
+        List<EvaluationPlan.Clause> removed = new ArrayList<>();
+        collect(rulesOf(previous), removed);
+        List<EvaluationPlan.Clause> added = new ArrayList<>();
+        collect(rulesOf(current), added);
+        if ((used + added.size()) * 2 > clauses.length) {
+            return null;
+        }
+        EvaluationPlan.Clause[] newClauses = clauses.clone();
+        int[] newSlots = slots.clone();
+        for (EvaluationPlan.Clause clause : removed) {
+            int index = indexOf(newClauses, clause);
+            if (index >= 0) {
+                newSlots[index] = -1;
+            }
+        }
+        Map<String, Integer> newNames = names;
+        int newUsed = used;
+        for (EvaluationPlan.Clause clause : added) {
+            Integer slot = newNames.get(clause.attribute);
+            if (slot == null) {
+                // a new attribute takes the next slot
+                if (newNames == names) {
+                    newNames = new HashMap<>(names);
+                }
+                slot = newNames.size();
+                newNames.put(clause.attribute, slot);
+            }
+            int index = clause.id & mask;
+            while (newClauses[index] != null && newSlots[index] >= 0) {
+                index = (index + 1) & mask;
+            }
+            if (newClauses[index] == null) {
+                newUsed++;
+            }
+            newClauses[index] = clause;
+            newSlots[index] = slot;
+        }
+        return new AttributeSlots(version, newNames == names ? names : ImmutableMap.copyOf(newNames), newClauses, newSlots, newUsed);
+    }
+
+    static AttributeSlots build(Collection<DataModel.FeatureFlag> flags, Collection<DataModel.Segment> segments, long version) {
+        List<EvaluationPlan.Clause> all = new ArrayList<>();
+        for (DataModel.FeatureFlag flag : flags) {
+            collect(rulesOf(flag), all);
+        }
+        for (DataModel.Segment segment : segments) {
+            collect(rulesOf(segment), all);
+        }
+        // sorted, so that the slots are the same for the same flags and segments
+        Set<String> sorted = new TreeSet<>();
+        for (EvaluationPlan.Clause clause : all) {
+            sorted.add(clause.attribute);
+        }
+        ImmutableMap.Builder<String, Integer> builder = ImmutableMap.builder();
+        int slot = 0;
+        for (String name : sorted) {
+            builder.put(name, slot++);
+        }
+        Map<String, Integer> names = builder.build();
+
+        // at most a quarter of the entries are used, so that the updates can add clauses
+        int capacity = Integer.highestOneBit(Math.max(all.size(), 1) * 8 - 1);
+        EvaluationPlan.Clause[] clauses = new EvaluationPlan.Clause[capacity];
+        int[] slots = new int[capacity];
+        for (EvaluationPlan.Clause clause : all) {
+            int index = clause.id & (capacity - 1);
+            while (clauses[index] != null) {
+                index = (index + 1) & (capacity - 1);
+            }
+            clauses[index] = clause;
+            slots[index] = names.get(clause.attribute);
+        }
+        return new AttributeSlots(version, names, clauses, slots, all.size());
+    }
+
+    private static int indexOf(EvaluationPlan.Clause[] clauses, EvaluationPlan.Clause clause) {
+        int mask = clauses.length - 1;
+        int index = clause.id & mask;
+        while (clauses[index] != null) {
+            if (clauses[index] == clause) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static EvaluationPlan.Rule[] rulesOf(DataModel.TimestampData data) {
+        if (data == null || data.isArchived()) {
+            return NO_RULES;
+        }
+        if (data instanceof DataModel.FeatureFlag) {
+            return ((DataModel.FeatureFlag) data).plan().rules;
+        }
+        return data instanceof DataModel.Segment ? ((DataModel.Segment) data).plan().rules : NO_RULES;
+    }
+
+    private static void collect(EvaluationPlan.Rule[] rules, List<EvaluationPlan.Clause> clauses) {
+        for (EvaluationPlan.Rule rule : rules) {
+            for (EvaluationPlan.Clause clause : rule.clauses) {
+                if (clause.attribute != null) {
+                    clauses.add(clause);
+                }
+            }
+        }
+    }
+}
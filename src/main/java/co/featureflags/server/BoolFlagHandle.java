@@ -0,0 +1,125 @@
+package co.featureflags.server;
+
+import co.featureflags.commons.model.FFCUser;
+import co.featureflags.server.integrations.FFCUserContextHolder;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A reusable handle of a boolean feature flag, obtained once by {@link co.featureflags.server.exterior.FFCClient#boolFlag(String)}
+ * and meant for the hot paths.
+ * <p>
+ * The handle keeps the flag it resolved with the version of the data loaded by the client, the flag is resolved again
+ * only once the data are updated; the key is checked when the handle is created and the type of the flag when it's
+ * resolved. It also counts its evaluations. A handle is thread-safe.
+ */
+public final class BoolFlagHandle {
+    private final FFCClientImp client;
+    private final String featureFlagKey;
+    private volatile Resolved resolved;
+    private final LongAdder evaluations = new LongAdder();
+    private final LongAdder enabled = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    BoolFlagHandle(FFCClientImp client, String featureFlagKey) {
+        this.client = client;
+        this.featureFlagKey = featureFlagKey;
+    }
+
+    /**
+     * Calculates the value of the flag for a given user.
+     *
+     * @param user the end user requesting the flag
+     * @return if the flag should be enabled, or false if the flag is disabled, or an error occurs
+     */
+    public boolean isEnabled(FFCUser user) {
+        return boolVariation(user, false);
+    }
+
+    /**
+     * Calculates the value of the flag for the current user.
+     * <p>
+     * note that this method should be called in the context that support to capture automatically the current user
+     *
+     * @return if the flag should be enabled, or false if the flag is disabled, current user doesn't exist or an error occurs
+     */
+    public boolean isEnabled() {
+        return boolVariation(FFCUserContextHolder.getCurrentUser(), false);
+    }
+
+    /**
+     * Calculates the value of the flag for a given user.
+     *
+     * @param user         the end user requesting the flag
+     * @param defaultValue the default value of the flag
+     * @return if the flag should be enabled, or {@code defaultValue} if the flag is disabled or an error occurs
+     */
+    public boolean boolVariation(FFCUser user, boolean defaultValue) {
+        Evaluator.EvalResult res = client.evaluateInternal(this, user, defaultValue);
+        evaluations.increment();
+        if (Evaluator.NO_EVAL_RES.equals(res.getIndex())) {
+            errors.increment();
+        }
+        boolean value = res.toBoolean();
+        if (value) {
+            enabled.increment();
+        }
+        return value;
+    }
+
+    /**
+     * @return the unique key of the flag
+     */
+    public String getKey() {
+        return featureFlagKey;
+    }
+
+    /**
+     * @return the number of evaluations by this handle
+     */
+    public long getEvaluationCount() {
+        return evaluations.sum();
+    }
+
+    /**
+     * @return the number of evaluations by this handle that returned true
+     */
+    public long getEnabledCount() {
+        return enabled.sum();
+    }
+
+    /**
+     * @return the number of evaluations by this handle that returned the default value because of an error,
+     * like an unknown flag, a missing user or a value that is not a boolean
+     */
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    /**
+     * @return the flag resolved for a version of the data
+     */
+    Resolved resolve(long version, Function<String, DataModel.FeatureFlag> getter) {
+        Resolved current = resolved;
+        if (current == null || current.version != version) {
+            current = new Resolved(version, getter.apply(featureFlagKey));
+            resolved = current;
+        }
+        return current;
+    }
+
+    static final class Resolved {
+        private final long version;
+        // null if the flag is not found
+        final DataModel.FeatureFlag flag;
+        // false if all the variations of the flag are booleans, the results are checked otherwise
+        final boolean checkType;
+
+        private Resolved(long version, DataModel.FeatureFlag flag) {
+            this.version = version;
+            this.flag = flag;
+            this.checkType = flag == null || !flag.plan().booleanResults;
+        }
+    }
+}
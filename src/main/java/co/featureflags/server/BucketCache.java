@@ -0,0 +1,103 @@
+package co.featureflags.server;
+
+import java.util.Base64;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bucketing percentages of user keys, they depend only on the user key, so that they are shared by all the flags.
+ * <p>
+ * The percentages are kept in a bounded direct-mapped table: a user key has a single slot, a new key replaces the one
+ * in its slot. Reading the table neither locks nor allocates. If the size is 0, they are computed in each evaluation.
+ */
+final class BucketCache {
+
+    static final int DEFAULT_SIZE = 10000;
+
+    private final Buckets[] table;
+    private final int mask;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder size = new LongAdder();
+
+    BucketCache(int size) {
+        int capacity = size <= 0 ? 0 : Integer.highestOneBit(Math.min(size, 1 << 29) * 2 - 1);
+        this.table = capacity == 0 ? null : new Buckets[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * @return the percentage used to split users in percentage rollouts
+     */
+    double rolloutPercentage(String userKey) {
+        return buckets(userKey).rolloutPercentage();
+    }
+
+    /**
+     * @return the percentage used to decide if a user is sent to experiment
+     */
+    double experimentPercentage(String userKey) {
+        return buckets(userKey).experimentPercentage();
+    }
+
+    Statistics.CacheStatistics statistics() {
+        if (table == null) {
+            return Statistics.CacheStatistics.EMPTY;
+        }
+        return Statistics.CacheStatistics.of(hitCount.sum(), missCount.sum(), evictionCount.sum(), size.sum());
+    }
+
+    private Buckets buckets(String userKey) {
+        if (table == null) {
+            return new Buckets(userKey);
+        }
+        int h = userKey.hashCode();
+        int slot = (h ^ (h >>> 16)) & mask;
+        // the entries are immutable except the lazy percentages, a stale read just misses
+        Buckets buckets = table[slot];
+        if (buckets != null && buckets.userKey.equals(userKey)) {
+            hitCount.increment();
+            return buckets;
+        }
+        missCount.increment();
+        if (buckets == null) {
+            size.increment();
+        } else {
+            evictionCount.increment();
+        }
+        Buckets newBuckets = new Buckets(userKey);
+        table[slot] = newBuckets;
+        return newBuckets;
+    }
+
+    // the percentages are computed lazily, a percentage is never NaN
+    private static final class Buckets {
+        private final String userKey;
+        private volatile double rolloutPercentage = Double.NaN;
+        private volatile double experimentPercentage = Double.NaN;
+
+        Buckets(String userKey) {
+            this.userKey = userKey;
+        }
+
+        double rolloutPercentage() {
+            double percentage = rolloutPercentage;
+            if (Double.isNaN(percentage)) {
+                percentage = VariationSplittingAlgorithm.percentageOfKey(userKey);
+                rolloutPercentage = percentage;
+            }
+            return percentage;
+        }
+
+        double experimentPercentage() {
+            double percentage = experimentPercentage;
+            if (Double.isNaN(percentage)) {
+                // the experiment splitting uses a hash of the user key different from the one of rollouts
+                String newUserKey = Base64.getEncoder().encodeToString(userKey.getBytes());
+                percentage = VariationSplittingAlgorithm.percentageOfKey(newUserKey);
+                experimentPercentage = percentage;
+            }
+            return percentage;
+        }
+    }
+}
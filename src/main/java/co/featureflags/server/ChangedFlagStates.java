@@ -0,0 +1,56 @@
+package co.featureflags.server;
+
+import co.featureflags.commons.model.AllFlagStates;
+
+import java.util.List;
+
+/**
+ * The flags of a user that changed since a version of storage,
+ * see {@link co.featureflags.server.exterior.FFCClient#getChangedFlagsVariations(co.featureflags.commons.model.FFCUser, long)}
+ */
+public final class ChangedFlagStates {
+    private final long version;
+    private final boolean fullUpdate;
+    private final AllFlagStates<String> flagStates;
+    private final List<String> removedFlagKeys;
+
+    private ChangedFlagStates(long version, boolean fullUpdate, AllFlagStates<String> flagStates, List<String> removedFlagKeys) {
+        this.version = version;
+        this.fullUpdate = fullUpdate;
+        this.flagStates = flagStates;
+        this.removedFlagKeys = removedFlagKeys;
+    }
+
+    static ChangedFlagStates of(long version, boolean fullUpdate, AllFlagStates<String> flagStates, List<String> removedFlagKeys) {
+        return new ChangedFlagStates(version, fullUpdate, flagStates, removedFlagKeys);
+    }
+
+    /**
+     * @return the version of storage to pass in the next call
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return true if the changes since the given version are unknown, in that case all the flags are returned
+     * and the flags not returned should be dropped
+     */
+    public boolean isFullUpdate() {
+        return fullUpdate;
+    }
+
+    /**
+     * @return the flags whose definition or dependencies changed, with details
+     */
+    public AllFlagStates<String> getFlagStates() {
+        return flagStates;
+    }
+
+    /**
+     * @return the keys of the flags archived or removed since the given version
+     */
+    public List<String> getRemovedFlagKeys() {
+        return removedFlagKeys;
+    }
+}
@@ -249,7 +249,8 @@ public abstract class DataModel {
         }
     }
 
-    static class Segment implements TimestampData {
+    @JsonAdapter(JsonHelper.AfterJsonParseDeserializableTypeAdapterFactory.class)
+    static class Segment implements TimestampData, JsonHelper.AfterJsonParseDeserializable {
 
         private final String id;
 
@@ -257,12 +258,15 @@ public abstract class DataModel {
 
         private final Long timestamp;
 
-        private final List<String> included;
+        // the wire lists are released once the segment is compiled by the json parser, the plan holds the keys
+        private List<String> included;
 
-        private final List<String> excluded;
+        private List<String> excluded;
 
         private final List<TargetRule> rules;
 
+        private transient volatile EvaluationPlan.Segment plan;
+
         Segment(String id,
                 Boolean isArchived,
                 Long timestamp,
@@ -298,10 +302,18 @@ public abstract class DataModel {
         }
 
         public List<String> getIncluded() {
+            EvaluationPlan.Segment p = plan;
+            if (p != null) {
+                return p.included.keys();
+            }
             return included == null ? Collections.emptyList() : included;
         }
 
         public List<String> getExcluded() {
+            EvaluationPlan.Segment p = plan;
+            if (p != null) {
+                return p.excluded.keys();
+            }
             return excluded == null ? Collections.emptyList() : excluded;
         }
 
@@ -309,24 +321,33 @@ public abstract class DataModel {
             return rules == null ? Collections.emptyList() : rules;
         }
 
-        public Boolean isMatchUser(String userKeyId) {
-            if (getExcluded().contains(userKeyId)) {
-                return Boolean.FALSE;
-            }
+        public TimestampData toArchivedTimestampData() {
+            return new ArchivedTimestampData(this.id, this.timestamp);
+        }
 
-            if (getIncluded().contains(userKeyId)) {
-                return Boolean.TRUE;
+        @Override
+        public void afterDeserialization() {
+            if (!isArchived()) {
+                plan = EvaluationPlan.compile(this);
+                // the segment is not yet shared, the keys are only held by the plan
+                included = null;
+                excluded = null;
             }
-            // if no included or excluded, then it's to match rules
-            return null;
         }
 
-        public TimestampData toArchivedTimestampData() {
-            return new ArchivedTimestampData(this.id, this.timestamp);
+        EvaluationPlan.Segment plan() {
+            EvaluationPlan.Segment p = plan;
+            if (p == null) {
+                // the segment is not built by json parser
+                p = EvaluationPlan.compile(this);
+                plan = p;
+            }
+            return p;
         }
     }
 
-    static class FeatureFlag implements TimestampData {
+    @JsonAdapter(JsonHelper.AfterJsonParseDeserializableTypeAdapterFactory.class)
+    static class FeatureFlag implements TimestampData, JsonHelper.AfterJsonParseDeserializable {
         private final String id;
         private final Boolean isArchived;
         private final Long timestamp;
@@ -341,6 +362,7 @@ public abstract class DataModel {
         private final List<TargetIndividuals> targets;
         @SerializedName("variationOptions")
         private final List<VariationOption> variations;
+        private transient volatile EvaluationPlan.Flag plan;
 
         FeatureFlag(String id, Boolean isArchived, Long timestamp, Boolean exptIncludeAllRules, FeatureFlagBasicInfo info, List<FeatureFlagPrerequisite> prerequisites, List<TargetRule> rules, List<TargetIndividuals> targets, List<VariationOption> variations) {
             this.id = id;
@@ -401,6 +423,23 @@ public abstract class DataModel {
         public List<VariationOption> getVariations() {
             return variations == null ? Collections.emptyList() : variations;
         }
+
+        @Override
+        public void afterDeserialization() {
+            if (!isArchived()) {
+                plan = EvaluationPlan.compile(this);
+            }
+        }
+
+        EvaluationPlan.Flag plan() {
+            EvaluationPlan.Flag p = plan;
+            if (p == null) {
+                // the flag is not built by json parser
+                p = EvaluationPlan.compile(this);
+                plan = p;
+            }
+            return p;
+        }
     }
 
     static class FeatureFlagBasicInfo {
@@ -533,11 +572,6 @@ public abstract class DataModel {
         public VariationOption getValueOption() {
             return valueOption;
         }
-
-        public boolean isTargeted(String userKeyId) {
-            if (individuals == null) return false;
-            return individuals.stream().anyMatch(i -> i.keyId.equals(userKeyId));
-        }
     }
 
     static class VariationOption {
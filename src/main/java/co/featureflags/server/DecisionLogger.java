@@ -0,0 +1,79 @@
+package co.featureflags.server;
+
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Guards the logs written in each evaluation, like the evaluated variation or an unknown flag.
+ * <p>
+ * An occurrence is logged only if the level is enabled, it's sampled in by the sampling rate, and no occurrence of
+ * the same key (usually the flag key) was logged within the interval. The suppressed occurrences are counted,
+ * see {@link Statistics.StatisticsProvider#getDecisionLogStatistics()}
+ */
+final class DecisionLogger {
+
+    static final double DEFAULT_SAMPLING_RATE = 1D;
+    // no rate limiting unless it is configured
+    static final Duration DEFAULT_INTERVAL = Duration.ZERO;
+
+    // the state of rate limiting is reset beyond this number of keys, e.g. many unknown flag keys
+    private static final int MAX_KEYS = 10000;
+
+    private final Logger logger;
+    private final double samplingRate;
+    private final long intervalNanos;
+    private final ConcurrentMap<String, AtomicLong> lastLogged = new ConcurrentHashMap<>();
+    private final LongAdder loggedCount = new LongAdder();
+    private final LongAdder sampledOutCount = new LongAdder();
+    private final LongAdder rateLimitedCount = new LongAdder();
+
+    DecisionLogger(Logger logger, double samplingRate, Duration interval) {
+        this.logger = logger;
+        this.samplingRate = samplingRate;
+        this.intervalNanos = interval == null || interval.isNegative() ? 0L : interval.toNanos();
+    }
+
+    boolean isInfoEnabled(String key) {
+        return logger.isInfoEnabled() && shouldLog(key);
+    }
+
+    boolean isWarnEnabled(String key) {
+        return logger.isWarnEnabled() && shouldLog(key);
+    }
+
+    Statistics.DecisionLogStatistics statistics() {
+        return Statistics.DecisionLogStatistics.of(loggedCount.sum(), sampledOutCount.sum(), rateLimitedCount.sum());
+    }
+
+    private boolean shouldLog(String key) {
+        if (samplingRate < 1D && ThreadLocalRandom.current().nextDouble() >= samplingRate) {
+            sampledOutCount.increment();
+            return false;
+        }
+        if (intervalNanos > 0L) {
+            long now = System.nanoTime();
+            String k = key == null ? "" : key;
+            AtomicLong last = lastLogged.get(k);
+            if (last == null) {
+                if (lastLogged.size() >= MAX_KEYS) {
+                    lastLogged.clear();
+                }
+                last = lastLogged.computeIfAbsent(k, ignored -> new AtomicLong(now - intervalNanos));
+            }
+            long previous = last.get();
+            // only one of the concurrent occurrences wins
+            if (now - previous < intervalNanos || !last.compareAndSet(previous, now)) {
+                rateLimitedCount.increment();
+                return false;
+            }
+        }
+        loggedCount.increment();
+        return true;
+    }
+}
@@ -0,0 +1,208 @@
+package co.featureflags.server;
+
+import co.featureflags.commons.model.FFCUser;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Longs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+
+/**
+ * An opt-in cache of the evaluation results of the hot flags.
+ * <p>
+ * A result is keyed by the flag id, the timestamps of the flag and of the prerequisites and segments it depends on,
+ * and the values of the user attributes that the flag reads, including the ones read by its segments and
+ * prerequisites. An update only makes stale the entries of the flags that depend on the updated items, they are never
+ * hit again and are evicted by the size bound; the entries of the other flags are kept.
+ * <p>
+ * The cached value is the list of the results added to the insight event in the evaluation, so that a hit sends
+ * the same event as an evaluation.
+ */
+final class EvalResultCache {
+
+    private final Cache<Key, List<Evaluator.EvalResult>> cache;
+    // the flags to cache, all of them if empty
+    private final Set<String> flagKeyNames;
+    private final LongSupplier storageVersion;
+    private final Evaluator.Getter<DataModel.FeatureFlag> flagGetter;
+    private final Evaluator.Getter<DataModel.Segment> segmentGetter;
+    private volatile Properties properties = new Properties(Long.MIN_VALUE);
+
+    EvalResultCache(int size,
+                    Collection<String> flagKeyNames,
+                    LongSupplier storageVersion,
+                    Evaluator.Getter<DataModel.FeatureFlag> flagGetter,
+                    Evaluator.Getter<DataModel.Segment> segmentGetter) {
+        this.cache = size <= 0 ? null : CacheBuilder.newBuilder().maximumSize(size).recordStats().build();
+        this.flagKeyNames = flagKeyNames == null ? ImmutableSet.of() : ImmutableSet.copyOf(flagKeyNames);
+        this.storageVersion = storageVersion;
+        this.flagGetter = flagGetter;
+        this.segmentGetter = segmentGetter;
+    }
+
+    boolean isCached(EvaluationPlan.Flag flag) {
+        return cache != null && (flagKeyNames.isEmpty() || flagKeyNames.contains(flag.keyName));
+    }
+
+    Key keyOf(EvaluationPlan.Flag flag, FFCUser user) {
+        long version = storageVersion.getAsLong();
+        Properties current = this.properties;
+        if (current.version != version) {
+            // the dependencies are collected again, the entries of the unchanged flags are still hit
+            current = new Properties(version);
+            this.properties = current;
+        }
+        Dependencies dependencies = current.of(flag);
+        String[] names = dependencies.names;
+        String[] values = new String[names.length + 1];
+        values[0] = user.getKey();
+        for (int i = 0; i < names.length; i++) {
+            values[i + 1] = user.getProperty(names[i]);
+        }
+        return new Key(flag.id, dependencies.timestamps, values);
+    }
+
+    List<Evaluator.EvalResult> get(Key key) {
+        return cache.getIfPresent(key);
+    }
+
+    void put(Key key, List<Evaluator.EvalResult> results) {
+        cache.put(key, results);
+    }
+
+    Statistics.CacheStatistics statistics() {
+        return Statistics.CacheStatistics.of(cache);
+    }
+
+    // the user attributes read by a flag and the timestamps of the items it depends on
+    private static final class Dependencies {
+        // sorted names of the user attributes
+        private final String[] names;
+        // the timestamps of the flag, then of its prerequisites and segments in the order they are visited
+        private final long[] timestamps;
+
+        Dependencies(String[] names, long[] timestamps) {
+            this.names = names;
+            this.timestamps = timestamps;
+        }
+    }
+
+    // the dependencies of the flags in a version of storage
+    private final class Properties {
+        // the timestamp of a missing prerequisite or segment
+        private static final long MISSING = Long.MIN_VALUE;
+
+        private final long version;
+        // flag id -> dependencies
+        private final ConcurrentMap<String, Dependencies> flags = new ConcurrentHashMap<>();
+
+        Properties(long version) {
+            this.version = version;
+        }
+
+        Dependencies of(EvaluationPlan.Flag flag) {
+            Dependencies dependencies = flags.get(flag.id);
+            // a thread may still hold the plan of another version of the flag,
+            // the dependencies are collected again if they don't belong to this plan
+            if (dependencies == null || dependencies.timestamps[0] != timestampOf(flag.timestamp)) {
+                Set<String> names = new TreeSet<>();
+                List<Long> timestamps = new ArrayList<>();
+                collect(flag, names, timestamps, new TreeSet<>(), new TreeSet<>());
+                dependencies = new Dependencies(names.toArray(new String[0]), Longs.toArray(timestamps));
+                flags.put(flag.id, dependencies);
+            }
+            return dependencies;
+        }
+
+        private void collect(EvaluationPlan.Flag flag,
+                             Set<String> names,
+                             List<Long> timestamps,
+                             Set<String> visitedFlags,
+                             Set<String> visitedSegments) {
+            if (!visitedFlags.add(flag.id)) {
+                return;
+            }
+            timestamps.add(timestampOf(flag.timestamp));
+            for (EvaluationPlan.Rule rule : flag.rules) {
+                collect(rule, names, timestamps, visitedSegments);
+            }
+            for (DataModel.FeatureFlagPrerequisite prerequisite : flag.prerequisites) {
+                DataModel.FeatureFlag preFlag = flagGetter.get(prerequisite.getPrerequisiteFeatureFlagId());
+                if (preFlag != null) {
+                    collect(preFlag.plan(), names, timestamps, visitedFlags, visitedSegments);
+                } else {
+                    timestamps.add(MISSING);
+                }
+            }
+        }
+
+        private void collect(EvaluationPlan.Rule rule, Set<String> names, List<Long> timestamps, Set<String> visitedSegments) {
+            for (EvaluationPlan.Clause clause : rule.clauses) {
+                if (clause.operator.isSegmentValue()) {
+                    for (String segmentId : clause.values) {
+                        if (!visitedSegments.add(segmentId)) {
+                            continue;
+                        }
+                        DataModel.Segment segment = segmentGetter.get(segmentId);
+                        if (segment != null) {
+                            EvaluationPlan.Segment plan = segment.plan();
+                            timestamps.add(timestampOf(plan.timestamp));
+                            for (EvaluationPlan.Rule segmentRule : plan.rules) {
+                                collect(segmentRule, names, timestamps, visitedSegments);
+                            }
+                        } else {
+                            timestamps.add(MISSING);
+                        }
+                    }
+                } else if (clause.operator != EvaluationPlan.Operator.UNKNOWN && clause.property != null) {
+                    names.add(clause.property);
+                }
+            }
+        }
+
+        private long timestampOf(Long timestamp) {
+            return timestamp == null ? MISSING : timestamp;
+        }
+    }
+
+    static final class Key {
+        private final String flagId;
+        // the timestamps of the flag and of its dependencies
+        private final long[] timestamps;
+        // the user key, followed by the attributes read by the flag
+        private final String[] values;
+        private final int hash;
+
+        private Key(String flagId, long[] timestamps, String[] values) {
+            this.flagId = flagId;
+            this.timestamps = timestamps;
+            this.values = values;
+            this.hash = Objects.hash(flagId, Arrays.hashCode(timestamps), Arrays.hashCode(values));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return Objects.equals(flagId, key.flagId)
+                    && Arrays.equals(timestamps, key.timestamps)
+                    && Arrays.equals(values, key.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,858 @@
+package co.featureflags.server;
+
+import co.featureflags.commons.json.JsonHelper;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.reflect.TypeToken;
+import org.apache.commons.lang3.StringUtils;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static co.featureflags.server.Evaluator.CONTAINS_CLAUSE;
+import static co.featureflags.server.Evaluator.ENDS_WITH_CLAUSE;
+import static co.featureflags.server.Evaluator.EQ_CLAUSE;
+import static co.featureflags.server.Evaluator.FLAG_DISABLE_STATS;
+import static co.featureflags.server.Evaluator.GE_CLAUSE;
+import static co.featureflags.server.Evaluator.GT_CLAUSE;
+import static co.featureflags.server.Evaluator.IS_FALSE_CLAUSE;
+import static co.featureflags.server.Evaluator.IS_IN_SEGMENT_CLAUSE;
+import static co.featureflags.server.Evaluator.IS_ONE_OF_CLAUSE;
+import static co.featureflags.server.Evaluator.IS_TRUE_CLAUSE;
+import static co.featureflags.server.Evaluator.LE_CLAUSE;
+import static co.featureflags.server.Evaluator.LT_CLAUSE;
+import static co.featureflags.server.Evaluator.MATCH_REGEX_CLAUSE;
+import static co.featureflags.server.Evaluator.NEQ_CLAUSE;
+import static co.featureflags.server.Evaluator.NOT_CONTAIN_CLAUSE;
+import static co.featureflags.server.Evaluator.NOT_IN_SEGMENT_CLAUSE;
+import static co.featureflags.server.Evaluator.NOT_MATCH_REGEX_CLAUSE;
+import static co.featureflags.server.Evaluator.NOT_ONE_OF_CLAUSE;
+import static co.featureflags.server.Evaluator.REASON_FALLTHROUGH;
+import static co.featureflags.server.Evaluator.REASON_FLAG_OFF;
+import static co.featureflags.server.Evaluator.REASON_PREREQUISITE_FAILED;
+import static co.featureflags.server.Evaluator.REASON_RULE_MATCH;
+import static co.featureflags.server.Evaluator.REASON_TARGET_MATCH;
+import static co.featureflags.server.Evaluator.STARTS_WITH_CLAUSE;
+import static co.featureflags.server.Evaluator.THAN_CLAUSE;
+
+/**
+ * Immutable and pre-resolved form of {@link DataModel.FeatureFlag} and {@link DataModel.Segment}.
+ * <p>
+ * A plan is compiled once when the data model is received, operators are resolved to {@link Operator} and clause values
+ * are pre-parsed, so that {@link Evaluator} runs the plan instead of interpreting the wire model in each evaluation.
+ */
+abstract class EvaluationPlan {
+
+    private static final Type STRING_LIST_TYPE = new TypeToken<List<String>>() {
+    }.getType();
+
+    // the ids of the clauses, see AttributeSlots; they wrap around after 2^32 clauses, the table tolerates it
+    private static final AtomicInteger CLAUSE_IDS = new AtomicInteger();
+
+    private EvaluationPlan() {
+        super();
+    }
+
+    // the basic info of a malformed flag that has none, such a flag serves no variation
+    private static final DataModel.FeatureFlagBasicInfo NO_INFO =
+            new DataModel.FeatureFlagBasicInfo(null, null, null, null, null, null, null, null, null);
+
+    static Flag compile(DataModel.FeatureFlag flag) {
+        return new Flag(flag);
+    }
+
+    static Segment compile(DataModel.Segment segment) {
+        return new Segment(segment);
+    }
+
+    // the wire lists may hold null elements, they are skipped when the plan is compiled
+    private static <T> List<T> nonNulls(List<T> list) {
+        if (!list.contains(null)) {
+            return list;
+        }
+        List<T> res = new ArrayList<>(list.size());
+        for (T element : list) {
+            if (element != null) {
+                res.add(element);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * callback used by segment clauses to check if a user is in a given segment
+     */
+    @FunctionalInterface
+    interface SegmentMatcher {
+        boolean isMatch(String segmentId, PreparedUser user);
+    }
+
+    enum Operator {
+        BIGGER_EQUAL_THAN(GE_CLAUSE) {
+            @Override
+            boolean matches(Clause clause, PreparedUser user, SegmentMatcher segments) {
+                return user.number(clause) >= clause.number;
+            }
+        },
+        BIGGER_THAN(GT_CLAUSE) {
+            @Override
+            boolean matches(Clause clause, PreparedUser user, SegmentMatcher segments) {
+                return user.number(clause) > clause.number;
+            }
+        },
+        LESS_EQUAL_THAN(LE_CLAUSE) {
+            @Override
+            boolean matches(Clause clause, PreparedUser user, SegmentMatcher segments) {
+                return user.number(clause) <= clause.number;
+            }
+        },
+        LESS_THAN(LT_CLAUSE) {
+            @Override
+            boolean matches(Clause clause, PreparedUser user, SegmentMatcher segments) {
+                return user.number(clause) < clause.number;
+            }
+        },
+        EQUAL(EQ_CLAUSE) {
+            @Override
+            boolean test(Clause clause, String pv) {
+                return clause.value.equals(pv);
+            }
+        },
+        NOT_EQUAL(NEQ_CLAUSE) {
+            @Override
+            boolean test(Clause clause, String pv) {
+                return !clause.value.equals(pv);
+            }
+        },
+        CONTAINS(CONTAINS_CLAUSE) {
+            @Override
+            boolean test(Clause clause, String pv) {
+                return pv != null && pv.contains(clause.value);
+            }
+        },
+        NOT_CONTAIN(NOT_CONTAIN_CLAUSE) {
+            @Override
+            boolean test(Clause clause, String pv) {
+                return !(pv != null && pv.contains(clause.value));
+            }
+        },
+        IS_ONE_OF(IS_ONE_OF_CLAUSE) {
+            @Override
+            boolean test(Clause clause, String pv) {
+                return isOneOf(clause, pv);
+            }
+        },
+        NOT_ONE_OF(NOT_ONE_OF_CLAUSE) {
+            @Override
+            boolean test(Clause clause, String pv) {
+                return !isOneOf(clause, pv);
+            }
+        },
+        STARTS_WITH(STARTS_WITH_CLAUSE) {
+            @Override
+            boolean test(Clause clause, String pv) {
+                return pv != null && pv.startsWith(clause.value);
+            }
+        },
+        ENDS_WITH(ENDS_WITH_CLAUSE) {
+            @Override
+            boolean test(Clause clause, String pv) {
+                return pv != null && pv.endsWith(clause.value);
+            }
+        },
+        IS_TRUE(IS_TRUE_CLAUSE) {
+            @Override
+            boolean matches(Clause clause, PreparedUser user, SegmentMatcher segments) {
+                //TODO add list of true keyword
+                return user.isTrue(clause);
+            }
+        },
+        IS_FALSE(IS_FALSE_CLAUSE) {
+            @Override
+            boolean matches(Clause clause, PreparedUser user, SegmentMatcher segments) {
+                //TODO add list of false keyword
+                return user.isFalse(clause);
+            }
+        },
+        MATCH_REGEX(MATCH_REGEX_CLAUSE) {
+            @Override
+            boolean test(Clause clause, String pv) {
+                return pv != null && clause.pattern != null && clause.pattern.matcher(pv).matches();
+            }
+        },
+        NOT_MATCH_REGEX(NOT_MATCH_REGEX_CLAUSE) {
+            @Override
+            boolean test(Clause clause, String pv) {
+                // an invalid pattern never matches
+                return clause.pattern != null && !(pv != null && clause.pattern.matcher(pv).matches());
+            }
+        },
+        IS_IN_SEGMENT(IS_IN_SEGMENT_CLAUSE) {
+            @Override
+            boolean matches(Clause clause, PreparedUser user, SegmentMatcher segments) {
+                return isInSegment(clause, user, segments);
+            }
+        },
+        NOT_IN_SEGMENT(NOT_IN_SEGMENT_CLAUSE) {
+            @Override
+            boolean matches(Clause clause, PreparedUser user, SegmentMatcher segments) {
+                return !isInSegment(clause, user, segments);
+            }
+        },
+        UNKNOWN("") {
+            @Override
+            boolean matches(Clause clause, PreparedUser user, SegmentMatcher segments) {
+                return false;
+            }
+        };
+
+        private static final ImmutableMap<String, Operator> OPERATORS;
+
+        static {
+            ImmutableMap.Builder<String, Operator> builder = ImmutableMap.builder();
+            for (Operator operator : values()) {
+                if (operator != UNKNOWN) {
+                    builder.put(operator.operation, operator);
+                }
+            }
+            OPERATORS = builder.build();
+        }
+
+        private final String operation;
+
+        Operator(String operation) {
+            this.operation = operation;
+        }
+
+        static Operator of(DataModel.RuleItem clause) {
+            String op = clause.getOperation();
+            // segment hasn't any operation
+            if (StringUtils.isBlank(op)) {
+                op = clause.getProperty();
+                // comparison clause without operation never matches, nor a clause without property
+                if (op == null || op.contains(THAN_CLAUSE)) {
+                    return UNKNOWN;
+                }
+            }
+            Operator operator = OPERATORS.get(op);
+            return operator == null ? UNKNOWN : operator;
+        }
+
+        String getOperation() {
+            return operation;
+        }
+
+        boolean isListValue() {
+            return this == IS_ONE_OF || this == NOT_ONE_OF || this == IS_IN_SEGMENT || this == NOT_IN_SEGMENT;
+        }
+
+        boolean isRegexValue() {
+            return this == MATCH_REGEX || this == NOT_MATCH_REGEX;
+        }
+
+        boolean isSegmentValue() {
+            return this == IS_IN_SEGMENT || this == NOT_IN_SEGMENT;
+        }
+
+        // estimated relative cost of a clause
+        int cost() {
+            switch (this) {
+                case UNKNOWN:
+                    return 0;
+                case EQUAL:
+                case NOT_EQUAL:
+                case IS_ONE_OF:
+                case NOT_ONE_OF:
+                case IS_TRUE:
+                case IS_FALSE:
+                    return 1;
+                case MATCH_REGEX:
+                case NOT_MATCH_REGEX:
+                    return 10;
+                case IS_IN_SEGMENT:
+                case NOT_IN_SEGMENT:
+                    return 20;
+                default:
+                    return 2;
+            }
+        }
+
+        boolean matches(Clause clause, PreparedUser user, SegmentMatcher segments) {
+            return test(clause, user.property(clause));
+        }
+
+        boolean test(Clause clause, String pv) {
+            return false;
+        }
+
+        private static boolean isOneOf(Clause clause, String pv) {
+            return pv != null && clause.values.contains(pv);
+        }
+
+        private static boolean isInSegment(Clause clause, PreparedUser user, SegmentMatcher segments) {
+            for (String segmentId : clause.values) {
+                if (segments.isMatch(segmentId, user)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    static final class Clause {
+        final String property;
+        final Operator operator;
+        final String value;
+        // pre-parsed value of comparison clause, NaN if it's not a number, any comparison with NaN is false
+        final double number;
+        // pre-parsed values of one-of clause or segment ids of segment clause
+        final Set<String> values;
+        // pre-compiled pattern of regex clause, null if the pattern is invalid
+        final Pattern pattern;
+        // the user attribute read by the clause, null if it doesn't read any, see AttributeSlots
+        final String attribute;
+        // position in the rule
+        final int index;
+        // unique among the live clauses, the ids of the clauses compiled together are consecutive
+        final int id = CLAUSE_IDS.getAndIncrement();
+
+        Clause(DataModel.RuleItem item, int index) {
+            this.index = index;
+            this.property = item.getProperty();
+            this.operator = Operator.of(item);
+            this.value = item.getValue();
+            this.number = Utils.parseNumber(value);
+            this.values = operator.isListValue() ? toSet(value) : ImmutableSet.of();
+            this.pattern = operator.isRegexValue() ? toPattern(value) : null;
+            this.attribute = operator == Operator.UNKNOWN || operator.isSegmentValue() ? null : property;
+        }
+
+        private static Pattern toPattern(String regex) {
+            try {
+                return Pattern.compile(regex);
+            } catch (PatternSyntaxException e) {
+                Loggers.EVALUATION.warn("FFC JAVA SDK: invalid regex {} in clause, the clause will never match", regex);
+                return null;
+            }
+        }
+
+        private static Set<String> toSet(String json) {
+            try {
+                List<String> list = JsonHelper.deserialize(json, STRING_LIST_TYPE);
+                if (list == null) {
+                    return ImmutableSet.of();
+                }
+                ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+                for (String v : list) {
+                    if (v != null) {
+                        builder.add(v);
+                    }
+                }
+                return builder.build();
+            } catch (Exception e) {
+                Loggers.EVALUATION.warn("FFC JAVA SDK: invalid clause value {}, it's regarded as an empty list", json);
+                return ImmutableSet.of();
+            }
+        }
+
+        boolean matches(PreparedUser user, SegmentMatcher segments) {
+            return operator.matches(this, user, segments);
+        }
+
+    }
+
+    /**
+     * A rule matches if all of its clauses match.
+     * <p>
+     * The clauses have no side effect, so they are evaluated in the order that rejects a user at the lowest cost:
+     * the cheap clauses and the ones that fail most often come first. The order is kept in the {@link ClauseStatistics}
+     * of the rule, it's adapted periodically to the failure rates observed in a sample of the evaluations.
+     */
+    static final class Rule {
+        // clauses in the order of the rule
+        final Clause[] clauses;
+        final Rollouts rollouts;
+        final ClauseStatistics statistics;
+
+        private Rule(DataModel.TargetRule rule, Rollouts rollouts) {
+            List<DataModel.RuleItem> items = nonNulls(rule.getRuleJsonContent());
+            this.clauses = new Clause[items.size()];
+            for (int i = 0; i < clauses.length; i++) {
+                clauses[i] = new Clause(items.get(i), i);
+            }
+            this.rollouts = rollouts;
+            this.statistics = new ClauseStatistics(clauses);
+        }
+
+        // all the clauses in a rule are ANDed
+        boolean matches(PreparedUser user, SegmentMatcher segments) {
+            Clause[] current = statistics.order();
+            if (current.length < 2) {
+                return current.length == 0 || current[0].matches(user, segments);
+            }
+            if (!statistics.isSampled()) {
+                for (Clause clause : current) {
+                    if (!clause.matches(user, segments)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            return statistics.matches(current, user, segments);
+        }
+
+        // rules of a segment, they have no rollouts
+        private static Rule[] of(List<DataModel.TargetRule> all) {
+            List<DataModel.TargetRule> rules = nonNulls(all);
+            Rule[] res = new Rule[rules.size()];
+            for (int i = 0; i < res.length; i++) {
+                res[i] = new Rule(rules.get(i), Rollouts.NONE);
+            }
+            return res;
+        }
+
+        private static Rule[] of(List<DataModel.TargetRule> all, Flag flag) {
+            List<DataModel.TargetRule> rules = nonNulls(all);
+            Rule[] res = new Rule[rules.size()];
+            for (int i = 0; i < res.length; i++) {
+                DataModel.TargetRule rule = rules.get(i);
+                Rollouts rollouts = new Rollouts(rule.getValueOptionsVariationRuleValues(),
+                        REASON_RULE_MATCH,
+                        flag.exptIncludeAllRules,
+                        rule.isIncludedInExpt(),
+                        flag);
+                res[i] = new Rule(rule, rollouts);
+            }
+            return res;
+        }
+    }
+
+    /**
+     * The mutable part of a rule, kept apart so that the plan stays immutable: the statistics of its clauses and
+     * the order of evaluation derived from them.
+     * <p>
+     * The counters are approximate on purpose. They are sampled: 1 evaluation in SAMPLING_MASK + 1, drawn at random
+     * per thread, updates them, so that the evaluations of a hot rule on many cores rarely write to shared memory;
+     * and they are updated without synchronization, the lost updates of concurrent sampled evaluations only blur
+     * a heuristic. The order is published through a volatile field and is always a permutation of the clauses.
+     */
+    static final class ClauseStatistics {
+        private static final int SAMPLING_MASK = 63;
+        // the number of sampled evaluations between two adaptations of the order, minus 1
+        private static final int ADAPTATION_MASK = 15;
+
+        private final Operator[] operators;
+        // per clause index: the sampled evaluations of the clause and the ones in which it failed
+        private final int[] evaluations;
+        private final int[] failures;
+        // the number of sampled evaluations of the rule, it only triggers the adaptation
+        private int samples;
+        // clauses in the order of evaluation, the array is replaced but never modified
+        private volatile Clause[] order;
+
+        private ClauseStatistics(Clause[] clauses) {
+            this.operators = new Operator[clauses.length];
+            for (int i = 0; i < clauses.length; i++) {
+                operators[i] = clauses[i].operator;
+            }
+            this.evaluations = new int[clauses.length];
+            this.failures = new int[clauses.length];
+            this.order = sort(clauses);
+        }
+
+        Clause[] order() {
+            return order;
+        }
+
+        boolean isSampled() {
+            return (ThreadLocalRandom.current().nextInt() & SAMPLING_MASK) == 0;
+        }
+
+        // the expected cost to reject a user, the clauses of a rule are evaluated by ascending rank
+        private double rank(Clause clause) {
+            // the failure rate is smoothed, 1/2 without statistics
+            double failureRate = (failures[clause.index] + 1D) / (evaluations[clause.index] + 2D);
+            return operators[clause.index].cost() / failureRate;
+        }
+
+        // insertion sort on a snapshot of the ranks, as the statistics may change meanwhile; a rule has a few clauses
+        private Clause[] sort(Clause[] clauses) {
+            Clause[] sorted = clauses.clone();
+            double[] ranks = new double[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                ranks[i] = rank(sorted[i]);
+            }
+            for (int i = 1; i < sorted.length; i++) {
+                Clause clause = sorted[i];
+                double rank = ranks[i];
+                int j = i - 1;
+                while (j >= 0 && (ranks[j] > rank || (ranks[j] == rank && sorted[j].index > clause.index))) {
+                    sorted[j + 1] = sorted[j];
+                    ranks[j + 1] = ranks[j];
+                    j--;
+                }
+                sorted[j + 1] = clause;
+                ranks[j + 1] = rank;
+            }
+            return sorted;
+        }
+
+        // a sampled evaluation of the clauses in the current order
+        private boolean matches(Clause[] current, PreparedUser user, SegmentMatcher segments) {
+            boolean matched = true;
+            for (Clause clause : current) {
+                evaluations[clause.index]++;
+                if (!clause.matches(user, segments)) {
+                    failures[clause.index]++;
+                    matched = false;
+                    break;
+                }
+            }
+            if ((++samples & ADAPTATION_MASK) == 0) {
+                adapt(current);
+            }
+            return matched;
+        }
+
+        private void adapt(Clause[] current) {
+            boolean sorted = true;
+            double previous = rank(current[0]);
+            for (int i = 1; i < current.length && sorted; i++) {
+                double rank = rank(current[i]);
+                sorted = previous <= rank;
+                previous = rank;
+            }
+            if (!sorted) {
+                order = sort(current);
+            }
+            // the older statistics weigh less and less
+            for (int i = 0; i < evaluations.length; i++) {
+                evaluations[i] >>>= 1;
+                failures[i] >>>= 1;
+            }
+        }
+    }
+
+    /**
+     * Percentage rollouts of a rule, the first rollout whose range [min, max) contains the percentage of user key wins.
+     * <p>
+     * The user key is hashed at most once; when the ranges are sorted and disjoint, as they are set up in the portal,
+     * the rollout is found by a binary search on the lower bounds. The results of each rollout are built in advance.
+     */
+    static final class Rollouts {
+        static final Rollouts NONE = new Rollouts();
+
+        private final double[] lowerBounds;
+        private final double[] upperBounds;
+        // the first rollout covering all the users: [0, 1], -1 if none
+        private final int fullRange;
+        private final boolean sorted;
+        // a user is sent to experiment if his experiment percentage < the upper bound; >= 1 always, <= 0 never
+        private final double[] experimentUpperBounds;
+        private final Evaluator.EvalResult[] sentToExperiment;
+        private final Evaluator.EvalResult[] notSentToExperiment;
+
+        private Rollouts() {
+            this.lowerBounds = new double[0];
+            this.upperBounds = new double[0];
+            this.fullRange = -1;
+            this.sorted = true;
+            this.experimentUpperBounds = new double[0];
+            this.sentToExperiment = new Evaluator.EvalResult[0];
+            this.notSentToExperiment = new Evaluator.EvalResult[0];
+        }
+
+        Rollouts(List<DataModel.VariationOptionPercentageRollout> rollouts,
+                 String reason,
+                 Boolean exptIncludeAllRules,
+                 Boolean ruleIncludedInExperiment,
+                 Flag flag) {
+            List<DataModel.VariationOptionPercentageRollout> valid = new ArrayList<>(rollouts.size());
+            List<double[]> ranges = new ArrayList<>(rollouts.size());
+            for (DataModel.VariationOptionPercentageRollout rollout : rollouts) {
+                double[] range = rollout == null ? null : rangeOf(rollout);
+                // a rollout without a valid range never matches
+                if (range != null) {
+                    valid.add(rollout);
+                    ranges.add(range);
+                }
+            }
+            int size = valid.size();
+            this.lowerBounds = new double[size];
+            this.upperBounds = new double[size];
+            this.experimentUpperBounds = new double[size];
+            this.sentToExperiment = new Evaluator.EvalResult[size];
+            this.notSentToExperiment = new Evaluator.EvalResult[size];
+            int full = -1;
+            boolean inOrder = true;
+            for (int i = 0; i < size; i++) {
+                DataModel.VariationOptionPercentageRollout rollout = valid.get(i);
+                double[] range = ranges.get(i);
+                lowerBounds[i] = range[0];
+                upperBounds[i] = range[1];
+                if (full < 0 && range[0] == 0D && range[1] == 1D) {
+                    full = i;
+                }
+                if (i > 0 && (lowerBounds[i] < lowerBounds[i - 1] || lowerBounds[i] < upperBounds[i - 1])) {
+                    inOrder = false;
+                }
+                experimentUpperBounds[i] = experimentUpperBound(rollout, range, exptIncludeAllRules, ruleIncludedInExperiment);
+                sentToExperiment[i] = flag.resultOf(rollout.getValueOption(), reason, true);
+                notSentToExperiment[i] = flag.resultOf(rollout.getValueOption(), reason, false);
+            }
+            this.fullRange = full;
+            this.sorted = inOrder;
+        }
+
+        private static double[] rangeOf(DataModel.VariationOptionPercentageRollout rollout) {
+            List<Double> range = rollout.getRolloutPercentage();
+            if (range.size() < 2 || range.get(0) == null || range.get(1) == null
+                    || Double.isNaN(range.get(0)) || Double.isNaN(range.get(1))) {
+                return null;
+            }
+            return new double[]{range.get(0), range.get(1)};
+        }
+
+        private static double experimentUpperBound(DataModel.VariationOptionPercentageRollout rollout,
+                                                   double[] range,
+                                                   Boolean exptIncludeAllRules,
+                                                   Boolean ruleIncludedInExperiment) {
+            if (exptIncludeAllRules == null || ruleIncludedInExperiment == null || rollout.getExptRollout() == null) {
+                return 1D;
+            }
+            if (!ruleIncludedInExperiment) {
+                return 0D;
+            }
+            double sendToExperimentPercentage = rollout.getExptRollout();
+            double splittingPercentage = range[1] - range[0];
+            if (sendToExperimentPercentage == 0D || splittingPercentage == 0D) {
+                return 0D;
+            }
+            return sendToExperimentPercentage / splittingPercentage;
+        }
+
+        /**
+         * @return the result if all the users get it, that's to say the first rollout covers all of them and the
+         * experiment doesn't split them; null otherwise
+         */
+        Evaluator.EvalResult constant() {
+            if (fullRange != 0) {
+                return null;
+            }
+            double experimentUpperBound = experimentUpperBounds[0];
+            if (experimentUpperBound >= 1D) {
+                return sentToExperiment[0];
+            }
+            return experimentUpperBound <= 0D ? notSentToExperiment[0] : null;
+        }
+
+        /**
+         * @return the result of the rollout the user belongs to, null if none
+         */
+        Evaluator.EvalResult evaluate(String userKey, BucketCache buckets) {
+            int index;
+            if (fullRange == 0) {
+                index = 0;
+            } else if (lowerBounds.length == 0) {
+                return null;
+            } else {
+                double percentage = buckets.rolloutPercentage(userKey);
+                index = sorted ? search(percentage) : scan(percentage);
+                // a full range matches even the percentage 1
+                if (fullRange >= 0 && (index < 0 || fullRange < index)) {
+                    index = fullRange;
+                }
+                if (index < 0) {
+                    return null;
+                }
+            }
+            double experimentUpperBound = experimentUpperBounds[index];
+            boolean sendToExperiment = experimentUpperBound >= 1D
+                    || (experimentUpperBound > 0D && buckets.experimentPercentage(userKey) < experimentUpperBound);
+            return Flag.checkResult(sendToExperiment ? sentToExperiment[index] : notSentToExperiment[index]);
+        }
+
+        // the range containing the percentage can only be the last one starting at or below it
+        private int search(double percentage) {
+            int low = 0;
+            int high = lowerBounds.length - 1;
+            int found = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (lowerBounds[mid] <= percentage) {
+                    found = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return found >= 0 && percentage < upperBounds[found] ? found : -1;
+        }
+
+        private int scan(double percentage) {
+            for (int i = 0; i < lowerBounds.length; i++) {
+                if (percentage >= lowerBounds[i] && percentage < upperBounds[i]) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    static final class Segment {
+        final String id;
+        final Long timestamp;
+        final KeySets.KeySet included;
+        final KeySets.KeySet excluded;
+        final Rule[] rules;
+        // sorted names of the user attributes read by the rules, null if a rule refers to another segment
+        final String[] properties;
+
+        private Segment(DataModel.Segment segment) {
+            this.id = segment.getId();
+            this.timestamp = segment.getTimestamp();
+            this.included = KeySets.of(segment.getIncluded());
+            this.excluded = KeySets.of(segment.getExcluded());
+            this.rules = Rule.of(segment.getRules());
+            this.properties = propertiesOf(rules);
+        }
+
+        private static String[] propertiesOf(Rule[] rules) {
+            Set<String> names = new TreeSet<>();
+            for (Rule rule : rules) {
+                for (Clause clause : rule.clauses) {
+                    if (clause.operator.isSegmentValue()) {
+                        return null;
+                    }
+                    if (clause.operator != Operator.UNKNOWN && clause.property != null) {
+                        names.add(clause.property);
+                    }
+                }
+            }
+            return names.toArray(new String[0]);
+        }
+
+        boolean isMatch(PreparedUser user, SegmentMatcher segments) {
+            String userKeyId = user.getKey();
+            if (excluded.contains(userKeyId)) {
+                return false;
+            }
+            if (included.contains(userKeyId)) {
+                return true;
+            }
+            // if no included or excluded, then it's to match rules
+            for (Rule rule : rules) {
+                if (rule.matches(user, segments)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The results that a flag can return are built when the flag is compiled and shared by all the evaluations.
+     */
+    static final class Flag {
+        final String id;
+        final Long timestamp;
+        final String keyName;
+        final String name;
+        final boolean disabled;
+        final Boolean exptIncludeAllRules;
+        final DataModel.FeatureFlagPrerequisite[] prerequisites;
+        // user key -> result of individual targeting
+        final Map<String, Evaluator.EvalResult> targets;
+        final Rule[] rules;
+        final Rollouts defaultRollouts;
+        final Evaluator.EvalResult flagOffResult;
+        final Evaluator.EvalResult prerequisiteFailedResult;
+        final Evaluator.EvalResult fallthroughResult;
+        // the result of a flag that doesn't depend on the user, null if it does
+        final Evaluator.EvalResult constantResult;
+        // true if all the results of the flag are booleans
+        final boolean booleanResults;
+        // the results built while the flag is compiled, so that the rules serving a same variation share its results
+        private Map<List<Object>, Evaluator.EvalResult> results = new HashMap<>();
+
+        private Flag(DataModel.FeatureFlag flag) {
+            DataModel.FeatureFlagBasicInfo info = flag.getInfo() == null ? NO_INFO : flag.getInfo();
+            this.id = flag.getId();
+            this.timestamp = flag.getTimestamp();
+            this.keyName = info.getKeyName();
+            this.name = info.getName();
+            this.disabled = FLAG_DISABLE_STATS.equals(info.getStatus());
+            this.exptIncludeAllRules = flag.isExptIncludeAllRules();
+            this.prerequisites = nonNulls(flag.getPrerequisites()).toArray(new DataModel.FeatureFlagPrerequisite[0]);
+            // targeted users are sent to experiment unless the experiment is explicitly limited to some rules
+            this.targets = indexTargets(flag.getTargets(), exptIncludeAllRules == null || exptIncludeAllRules);
+            this.rules = Rule.of(flag.getRules(), this);
+            this.defaultRollouts = new Rollouts(info.getDefaultRulePercentageRollouts(),
+                    REASON_FALLTHROUGH,
+                    exptIncludeAllRules,
+                    info.isDefaultRulePercentageRolloutsIncludedInExpt(),
+                    this);
+            DataModel.VariationOption disabledVariation = info.getVariationOptionWhenDisabled();
+            this.flagOffResult = resultOf(disabledVariation, REASON_FLAG_OFF, false);
+            this.prerequisiteFailedResult = resultOf(disabledVariation, REASON_PREREQUISITE_FAILED, false);
+            this.fallthroughResult = resultOf(disabledVariation, REASON_FALLTHROUGH, false);
+            this.constantResult = constantResultOf();
+            this.booleanResults = results.values().stream().allMatch(result -> result.checkType(Boolean.FALSE));
+            this.results = null;
+        }
+
+        // a flag off, or a flag without prerequisites, targets or rules that serves a variation to all the users
+        private Evaluator.EvalResult constantResultOf() {
+            if (disabled) {
+                return flagOffResult;
+            }
+            if (prerequisites.length == 0 && targets.isEmpty() && rules.length == 0) {
+                return defaultRollouts.constant();
+            }
+            return null;
+        }
+
+        private Map<String, Evaluator.EvalResult> indexTargets(List<DataModel.TargetIndividuals> targets, boolean sendToExperiment) {
+            Map<String, Evaluator.EvalResult> index = new HashMap<>();
+            for (DataModel.TargetIndividuals target : targets) {
+                if (target == null || target.getValueOption() == null) {
+                    continue;
+                }
+                Evaluator.EvalResult result = resultOf(target.getValueOption(), REASON_TARGET_MATCH, sendToExperiment);
+                for (DataModel.FeatureFlagTargetIndividualUser individual : target.getIndividuals()) {
+                    // the first matched target wins if a user is targeted more than once
+                    if (individual != null && individual.getKeyId() != null) {
+                        index.putIfAbsent(individual.getKeyId(), result);
+                    }
+                }
+            }
+            return ImmutableMap.copyOf(index);
+        }
+
+        private Evaluator.EvalResult resultOf(DataModel.VariationOption option, String reason, boolean sendToExperiment) {
+            if (option == null) {
+                return null;
+            }
+            List<Object> key = Arrays.asList(option.getLocalId(), option.getVariationValue(), reason, sendToExperiment);
+            return results.computeIfAbsent(key, k -> Evaluator.EvalResult.of(option, reason, sendToExperiment, keyName, name, id, timestamp));
+        }
+
+        // a result is missing only if the flag is malformed
+        static Evaluator.EvalResult checkResult(Evaluator.EvalResult result) {
+            if (result == null) {
+                throw new IllegalStateException("FFC JAVA SDK: variation option is missing");
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package co.featureflags.server;
+
+import co.featureflags.commons.model.EvalDetail;
+import co.featureflags.commons.model.FFCUser;
+import co.featureflags.commons.model.FlagState;
+
+import java.io.Closeable;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A session evaluates the flags for a same user, for example the flags checked to render a page,
+ * see {@link co.featureflags.server.exterior.FFCClient#session(FFCUser)}.
+ * <p>
+ * The state derived from the user, like the attributes read by the rules, the segment memberships and the results of
+ * the prerequisites, is computed once in the session. A flag is evaluated once: the later calls return the same
+ * result, even if the flag is updated in the meantime, so that a session sees a consistent set of flags.
+ * <p>
+ * All the variations evaluated in a session are sent in a single insight event when the session is closed;
+ * a session evaluates the flags as the client does after it is closed. A session is not thread-safe.
+ */
+public final class EvaluationSession implements Closeable {
+    private final FFCClientImp client;
+    private final FFCUser user;
+    private final Evaluator.EvalContext context;
+    private final InsightTypes.Event event;
+    private final Consumer<InsightTypes.Event> eventHandler;
+    private boolean closed;
+
+    EvaluationSession(FFCClientImp client, FFCUser user, InsightTypes.Event event, Consumer<InsightTypes.Event> eventHandler) {
+        this.client = client;
+        this.user = user;
+        this.context = new Evaluator.EvalContext(user);
+        this.event = event;
+        this.eventHandler = eventHandler;
+    }
+
+    /**
+     * @return the end user of the session
+     */
+    public FFCUser getUser() {
+        return user;
+    }
+
+    /**
+     * Calculates the value of a feature flag for the user of the session.
+     *
+     * @param featureFlagKey the unique key for the feature flag
+     * @param defaultValue   the default value of the flag
+     * @return the variation for the user, or {@code defaultValue} if the flag is disabled or an error occurs
+     */
+    public String variation(String featureFlagKey, String defaultValue) {
+        return evaluate(featureFlagKey, defaultValue, false).getValue();
+    }
+
+    /**
+     * Calculates the value of a feature flag for the user of the session, with details.
+     *
+     * @param featureFlagKey the unique key for the feature flag
+     * @param defaultValue   the default value of the flag
+     * @return a {@link FlagState} object
+     */
+    public FlagState<String> variationDetail(String featureFlagKey, String defaultValue) {
+        Evaluator.EvalResult res = evaluate(featureFlagKey, defaultValue, false);
+        return EvalDetail.of(res.getValue(), res.getIndex(), res.getReason(), featureFlagKey, featureFlagKey).toFlagState();
+    }
+
+    /**
+     * Calculates the boolean value of a feature flag for the user of the session.
+     *
+     * @param featureFlagKey the unique key for the feature flag
+     * @param defaultValue   the default value of the flag
+     * @return if the flag should be enabled, or {@code defaultValue} if the flag is disabled or an error occurs
+     */
+    public boolean boolVariation(String featureFlagKey, Boolean defaultValue) {
+        checkNotNull(defaultValue, "null defaultValue is invalid");
+        return evaluate(featureFlagKey, defaultValue, true).toBoolean();
+    }
+
+    /**
+     * alias of boolVariation for the user of the session
+     *
+     * @param featureFlagKey the unique key for the feature flag
+     * @return if the flag should be enabled, or false if the flag is disabled, or an error occurs
+     */
+    public boolean isEnabled(String featureFlagKey) {
+        return boolVariation(featureFlagKey, false);
+    }
+
+    /**
+     * Calculates the double value of a feature flag for the user of the session.
+     *
+     * @param featureFlagKey the unique key for the feature flag
+     * @param defaultValue   the default value of the flag
+     * @return the variation for the user, or {@code defaultValue} if the flag is disabled or an error occurs
+     */
+    public double doubleVariation(String featureFlagKey, Double defaultValue) {
+        checkNotNull(defaultValue, "null defaultValue is invalid");
+        return evaluate(featureFlagKey, defaultValue, true).toDouble();
+    }
+
+    /**
+     * Calculates the integer value of a feature flag for the user of the session.
+     *
+     * @param featureFlagKey the unique key for the feature flag
+     * @param defaultValue   the default value of the flag
+     * @return the variation for the user, or {@code defaultValue} if the flag is disabled or an error occurs
+     */
+    public int intVariation(String featureFlagKey, Integer defaultValue) {
+        checkNotNull(defaultValue, "null defaultValue is invalid");
+        return (int) evaluate(featureFlagKey, defaultValue, true).toDouble();
+    }
+
+    /**
+     * Calculates the long value of a feature flag for the user of the session.
+     *
+     * @param featureFlagKey the unique key for the feature flag
+     * @param defaultValue   the default value of the flag
+     * @return the variation for the user, or {@code defaultValue} if the flag is disabled or an error occurs
+     */
+    public long longVariation(String featureFlagKey, Long defaultValue) {
+        checkNotNull(defaultValue, "null defaultValue is invalid");
+        return (long) evaluate(featureFlagKey, defaultValue, true).toDouble();
+    }
+
+    private Evaluator.EvalResult evaluate(String featureFlagKey, Object defaultValue, boolean checkType) {
+        if (closed) {
+            return client.evaluateInternal(featureFlagKey, user, defaultValue, checkType);
+        }
+        return client.evaluateInternal(featureFlagKey, context, event, defaultValue, checkType);
+    }
+
+    /**
+     * Sends the variations evaluated in the session in a single insight event. Closing a session twice has no effect.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (event.isSendEvent()) {
+            eventHandler.accept(event);
+        }
+    }
+}
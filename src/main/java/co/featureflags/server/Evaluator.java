@@ -5,6 +5,12 @@ import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Evaluation process is totally isolated from update process and data storage
  */
@@ -67,6 +73,12 @@ abstract class Evaluator {
 
     abstract EvalResult evaluate(DataModel.FeatureFlag flag, FFCUser user, InsightTypes.Event event);
 
+    /**
+     * Evaluates a flag in a context shared by several evaluations of the same user, so that a prerequisite flag
+     * is evaluated only once in the context.
+     */
+    abstract EvalResult evaluate(DataModel.FeatureFlag flag, EvalContext context, InsightTypes.Event event);
+
     @FunctionalInterface
     interface Getter<T extends DataModel.TimestampData> {
         T get(String key);
@@ -79,15 +91,50 @@ abstract class Evaluator {
         private final boolean sendToExperiment;
         private final String keyName;
         private final String name;
+        // the version of the flag that served the value, null if the result is an error
+        private final String flagId;
+        private final Long flagTimestamp;
+        // typed forms of the value, parsed once
+        private final Boolean booleanValue;
+        private final boolean numeric;
+        private final boolean hasNumber;
+        private final double number;
 
 
         EvalResult(String value, Integer index, String reason, boolean sendToExperiment, String keyName, String name) {
+            this(value, index, reason, sendToExperiment, keyName, name, null, null);
+        }
+
+        EvalResult(String value,
+                   Integer index,
+                   String reason,
+                   boolean sendToExperiment,
+                   String keyName,
+                   String name,
+                   String flagId,
+                   Long flagTimestamp) {
             this.value = value;
+            this.flagId = flagId;
+            this.flagTimestamp = flagTimestamp;
             this.index = index;
             this.reason = reason;
             this.sendToExperiment = sendToExperiment;
             this.keyName = keyName;
             this.name = name;
+            this.booleanValue = BooleanUtils.toBooleanObject(value);
+            this.numeric = StringUtils.isNumeric(value);
+            double n = Double.NaN;
+            boolean parsed = false;
+            if (numeric) {
+                try {
+                    n = Double.parseDouble(value);
+                    parsed = true;
+                } catch (NumberFormatException ignore) {
+                    // digits of another script
+                }
+            }
+            this.number = n;
+            this.hasNumber = parsed;
         }
 
         public static EvalResult error(String reason, String keyName, String name) {
@@ -102,13 +149,17 @@ abstract class Evaluator {
                                     String reason,
                                     boolean sendToExperiment,
                                     String keyName,
-                                    String name) {
+                                    String name,
+                                    String flagId,
+                                    Long flagTimestamp) {
             return new EvalResult(option.getVariationValue(),
                     option.getLocalId(),
                     reason,
                     sendToExperiment,
                     keyName,
-                    name);
+                    name,
+                    flagId,
+                    flagTimestamp);
         }
 
         public String getValue() {
@@ -135,6 +186,29 @@ abstract class Evaluator {
             return name;
         }
 
+        String getFlagId() {
+            return flagId;
+        }
+
+        Long getFlagTimestamp() {
+            return flagTimestamp;
+        }
+
+        /**
+         * @return the value as a boolean, false if it's not a boolean
+         */
+        public boolean toBoolean() {
+            return booleanValue == Boolean.TRUE;
+        }
+
+        /**
+         * @return the value as a number
+         * @throws NumberFormatException if the value is not a number
+         */
+        public double toDouble() {
+            return hasNumber ? number : Double.parseDouble(value);
+        }
+
         public boolean checkType(Object defaultValue) {
             if (value == null) {
                 return false;
@@ -142,11 +216,95 @@ abstract class Evaluator {
             if (defaultValue instanceof String) {
                 return true;
             }
-            if (defaultValue instanceof Boolean && BooleanUtils.toBooleanObject(value) != null) {
+            if (defaultValue instanceof Boolean && booleanValue != null) {
                 return true;
             }
-            return (defaultValue instanceof Integer || defaultValue instanceof Long || defaultValue instanceof Double) && StringUtils.isNumeric(value);
+            return (defaultValue instanceof Integer || defaultValue instanceof Long || defaultValue instanceof Double) && numeric;
         }
     }
 
+    /**
+     * State of the evaluations of a user, the results of the flags that were evaluated in the context are memoized.
+     * <p>
+     * A context is not thread-safe.
+     */
+    static final class EvalContext {
+        // a marker, compared by reference
+        private static final List<EvalResult> IN_PROGRESS = Collections.unmodifiableList(new ArrayList<>());
+
+        final FFCUser user;
+        // flag id -> results added to the insight event when the flag was evaluated, its own result is the last one
+        private final Map<String, List<EvalResult>> evaluated = new HashMap<>();
+        // all the results added to the insight event in this context
+        private final List<EvalResult> trace = new ArrayList<>();
+        // segment id -> membership of the user, created on demand
+        private Map<String, Boolean> segments;
+        private EvaluationPlan.SegmentMatcher segmentMatcher;
+        private PreparedUser preparedUser;
+
+        EvalContext(FFCUser user) {
+            this.user = user;
+        }
+
+        /**
+         * @return the results of a flag that was evaluated in the context, null if none
+         */
+        List<EvalResult> evaluated(String flagId) {
+            List<EvalResult> results = evaluated.get(flagId);
+            return results == IN_PROGRESS ? null : results;
+        }
+
+        /**
+         * @return true if the flag is being evaluated, that's to say a prerequisite refers to it
+         */
+        boolean isEvaluating(String flagId) {
+            return evaluated.get(flagId) == IN_PROGRESS;
+        }
+
+        int begin(String flagId) {
+            evaluated.put(flagId, IN_PROGRESS);
+            return trace.size();
+        }
+
+        void record(EvalResult result) {
+            trace.add(result);
+        }
+
+        void end(String flagId, int mark, boolean completed) {
+            if (completed) {
+                evaluated.put(flagId, new ArrayList<>(trace.subList(mark, trace.size())));
+            } else {
+                evaluated.remove(flagId);
+            }
+        }
+
+        /**
+         * @return the user prepared for the clauses, shared by all the evaluations in the context; it keeps the slots
+         * of the first evaluation
+         */
+        PreparedUser preparedUser(AttributeSlots slots) {
+            if (preparedUser == null) {
+                preparedUser = new PreparedUser(user, slots);
+            }
+            return preparedUser;
+        }
+
+        /**
+         * @return a matcher that checks the membership of the user in a segment only once in the context
+         */
+        EvaluationPlan.SegmentMatcher segmentMatcher(EvaluationPlan.SegmentMatcher matcher) {
+            if (segmentMatcher == null) {
+                segments = new HashMap<>();
+                segmentMatcher = (segmentId, u) -> {
+                    Boolean match = segments.get(segmentId);
+                    if (match == null) {
+                        match = matcher.isMatch(segmentId, u);
+                        segments.put(segmentId, match);
+                    }
+                    return match;
+                };
+            }
+            return segmentMatcher;
+        }
+    }
 }
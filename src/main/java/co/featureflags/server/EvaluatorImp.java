@@ -1,23 +1,34 @@
 package co.featureflags.server;
 
-import co.featureflags.commons.json.JsonHelper;
 import co.featureflags.commons.model.FFCUser;
-import com.google.gson.JsonParseException;
-import com.google.gson.reflect.TypeToken;
-import org.apache.commons.lang3.StringUtils;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.util.Arrays;
-import java.util.Base64;
-import java.util.Collection;
 import java.util.List;
-import java.util.regex.Pattern;
-
-final class EvaluatorImp extends Evaluator {
-
-    public EvaluatorImp(Getter<DataModel.FeatureFlag> flagGetter, Getter<DataModel.Segment> segmentGetter) {
+import java.util.function.Supplier;
+
+final class EvaluatorImp extends Evaluator implements EvaluationPlan.SegmentMatcher {
+
+    private final BucketCache buckets;
+    private final DecisionLogger decisionLogger;
+    private final Supplier<PrerequisiteGraph> prerequisiteGraph;
+    private final Supplier<AttributeSlots> attributeSlots;
+    private final EvalResultCache resultCache;
+    private final SegmentCache segmentCache;
+
+    public EvaluatorImp(Getter<DataModel.FeatureFlag> flagGetter,
+                        Getter<DataModel.Segment> segmentGetter,
+                        BucketCache buckets,
+                        DecisionLogger decisionLogger,
+                        Supplier<PrerequisiteGraph> prerequisiteGraph,
+                        Supplier<AttributeSlots> attributeSlots,
+                        EvalResultCache resultCache,
+                        SegmentCache segmentCache) {
         super(flagGetter, segmentGetter);
+        this.buckets = buckets;
+        this.decisionLogger = decisionLogger;
+        this.prerequisiteGraph = prerequisiteGraph;
+        this.attributeSlots = attributeSlots;
+        this.resultCache = resultCache;
+        this.segmentCache = segmentCache;
     }
 
     @Override
@@ -25,15 +36,88 @@ final class EvaluatorImp extends Evaluator {
         if (user == null || flag == null) {
             throw new IllegalArgumentException("null flag or empty user");
         }
-        return matchUserVariation(flag, user, event);
+        EvaluationPlan.Flag plan = flag.plan();
+        // nothing to cache for a flag whose result doesn't depend on the user
+        if (plan.constantResult == null && resultCache.isCached(plan)) {
+            return evaluateWithCache(plan, user, event);
+        }
+        // a context is only needed to evaluate the prerequisites
+        EvalContext context = plan.prerequisites.length == 0 ? null : new EvalContext(user);
+        return matchUserVariation(plan, user, context, event);
+    }
+
+    private EvalResult evaluateWithCache(EvaluationPlan.Flag plan, FFCUser user, InsightTypes.Event event) {
+        EvalResultCache.Key key = resultCache.keyOf(plan, user);
+        List<EvalResult> cached = resultCache.get(key);
+        if (cached != null) {
+            for (EvalResult er : cached) {
+                addToEvent(er, null, event);
+            }
+            return cached.get(cached.size() - 1);
+        }
+        EvalContext context = new EvalContext(user);
+        EvalResult er = matchUserVariation(plan, user, context, event);
+        resultCache.put(key, context.evaluated(plan.id));
+        return er;
+    }
+
+    @Override
+    EvalResult evaluate(DataModel.FeatureFlag flag, EvalContext context, InsightTypes.Event event) {
+        if (context == null || context.user == null || flag == null) {
+            throw new IllegalArgumentException("null flag or empty user");
+        }
+        return matchUserVariation(flag.plan(), context.user, context, event);
+    }
+
+    @Override
+    public boolean isMatch(String segmentId, PreparedUser user) {
+        DataModel.Segment segment = segmentGetter.get(segmentId);
+        return segment != null && segmentCache.isMatch(segment.plan(), user, this);
+    }
+
+    private EvalResult matchUserVariation(EvaluationPlan.Flag flag, FFCUser user, EvalContext context, InsightTypes.Event event) {
+        if (context == null) {
+            return evaluateUserVariation(flag, user, null, event);
+        }
+        // a flag already evaluated in the context: add the same variations to the event
+        List<EvalResult> evaluated = context.evaluated(flag.id);
+        if (evaluated != null) {
+            for (EvalResult er : evaluated) {
+                addToEvent(er, context, event);
+            }
+            return evaluated.get(evaluated.size() - 1);
+        }
+        int mark = context.begin(flag.id);
+        boolean completed = false;
+        try {
+            EvalResult er = evaluateUserVariation(flag, user, context, event);
+            completed = true;
+            return er;
+        } finally {
+            context.end(flag.id, mark, completed);
+        }
+    }
 
+    private void addToEvent(EvalResult er, EvalContext context, InsightTypes.Event event) {
+        // a null event drops the variations, no need to create them
+        if (event != null && !(event instanceof InsightTypes.NullEvent)) {
+            event.add(InsightTypes.FlagEventVariation.of(er.getKeyName(), er));
+        }
+        if (context != null) {
+            context.record(er);
+        }
     }
 
-    private EvalResult matchUserVariation(DataModel.FeatureFlag flag, FFCUser user, InsightTypes.Event event) {
+    private EvalResult evaluateUserVariation(EvaluationPlan.Flag flag, FFCUser user, EvalContext context, InsightTypes.Event event) {
         //return a value when flag is off or not match prerequisite rule
         EvalResult er = null;
         try {
-            er = matchFeatureFlagDisabledUserVariation(flag, user, event);
+            er = flag.constantResult;
+            if (er != null) {
+                return er;
+            }
+
+            er = matchFeatureFlagDisabledUserVariation(flag, user, context, event);
             if (er != null) {
                 return er;
             }
@@ -43,7 +127,7 @@ final class EvaluatorImp extends Evaluator {
             if (er != null) return er;
 
             //return the value of matched rule
-            er = matchConditionedUserVariation(flag, user);
+            er = matchConditionedUserVariation(flag, user, context);
             if (er != null) {
                 return er;
             }
@@ -54,264 +138,84 @@ final class EvaluatorImp extends Evaluator {
                 return er;
             }
             // TODO useless code
-            er = EvalResult.of(flag.getInfo().getVariationOptionWhenDisabled(), REASON_FALLTHROUGH, false, flag.getInfo().getKeyName(), flag.getInfo().getName());
+            er = EvaluationPlan.Flag.checkResult(flag.fallthroughResult);
             return er;
         } finally {
             if (er != null) {
-                logger.info("FFC JAVA SDK: User {}, Feature Flag {}, Flag Value {}", user.getKey(), flag.getInfo().getKeyName(), er.getValue());
-                if (event != null) {
-                    event.add(InsightTypes.FlagEventVariation.of(flag.getInfo().getKeyName(), er));
+                if (decisionLogger.isInfoEnabled(flag.keyName)) {
+                    logger.info("FFC JAVA SDK: User {}, Feature Flag {}, Flag Value {}", user.getKey(), flag.keyName, er.getValue());
                 }
+                addToEvent(er, context, event);
             }
         }
     }
 
-    private EvalResult matchFeatureFlagDisabledUserVariation(DataModel.FeatureFlag flag, FFCUser
-            user, InsightTypes.Event event) {
+    private EvalResult matchFeatureFlagDisabledUserVariation(EvaluationPlan.Flag flag,
+                                                             FFCUser user,
+                                                             EvalContext context,
+                                                             InsightTypes.Event event) {
         // case flag is off
-        if (FLAG_DISABLE_STATS.equals(flag.getInfo().getStatus())) {
-            return EvalResult.of(flag.getInfo().getVariationOptionWhenDisabled(), REASON_FLAG_OFF, false, flag.getInfo().getKeyName(), flag.getInfo().getName());
+        if (flag.disabled) {
+            return EvaluationPlan.Flag.checkResult(flag.flagOffResult);
         }
         // case prerequisite is set
-        return flag.getPrerequisites().stream().filter(prerequisite -> {
-                    String preFlagId = prerequisite.getPrerequisiteFeatureFlagId();
-                    if (!preFlagId.equals(flag.getInfo().getId())) {
-                        DataModel.FeatureFlag preFlag = this.flagGetter.get(preFlagId);
-                        if (preFlag == null) {
-                            String preFlagKey = FeatureFlagKeyExtension.unpackFeatureFlagId(preFlagId, 4);
-                            logger.warn("prerequisite flag {} not found", preFlagKey);
-                            return true;
-                        }
-                        EvalResult er = matchUserVariation(preFlag, user, event);
-                        // even if prerequisite flag is off, check if default value of prerequisite flag matches expected value
-                        // if prerequisite failed, return the default value of this flag
-                        return !er.getIndex().equals(prerequisite.getValueOptionsVariationValue().getLocalId());
-
+        PrerequisiteGraph graph = flag.prerequisites.length == 0 ? null : prerequisiteGraph.get();
+        for (DataModel.FeatureFlagPrerequisite prerequisite : flag.prerequisites) {
+            String preFlagId = prerequisite.getPrerequisiteFeatureFlagId();
+            if (!preFlagId.equals(flag.id)) {
+                // flags depending on each other, the context also protects from a cycle that is not yet in the graph
+                if (graph.isCircular(flag.id, preFlagId) || context.isEvaluating(preFlagId)) {
+                    if (decisionLogger.isWarnEnabled(preFlagId)) {
+                        logger.warn("FFC JAVA SDK: circular prerequisite {} of flag {}", preFlagId, flag.keyName);
                     }
-                    return false;
-                }).findFirst()
-                .map(prerequisite -> EvalResult.of(flag.getInfo().getVariationOptionWhenDisabled(), REASON_PREREQUISITE_FAILED, false, flag.getInfo().getKeyName(), flag.getInfo().getName()))
-                .orElse(null);
-    }
-
-    private EvalResult matchTargetedUserVariation(DataModel.FeatureFlag featureFlag, FFCUser user) {
-        return featureFlag.getTargets().stream()
-                .filter(target -> target.isTargeted(user.getKey()))
-                .findFirst()
-                .map(target -> EvalResult.of(target.getValueOption(), REASON_TARGET_MATCH, isSendToExperimentForTargetedUserVariation(featureFlag.isExptIncludeAllRules()), featureFlag.getInfo().getKeyName(), featureFlag.getInfo().getName()))
-                .orElse(null);
-    }
-
-    private EvalResult matchConditionedUserVariation(DataModel.FeatureFlag featureFlag, FFCUser user) {
-        DataModel.TargetRule targetRule = featureFlag.getRules().stream().filter(rule -> ifUserMatchRule(user, rule.getRuleJsonContent())).findFirst().orElse(null);
-        // optional flatmap can't infer inner type of collection
-        return targetRule == null ? null : getRollOutVariationOption(targetRule.getValueOptionsVariationRuleValues(),
-                user,
-                REASON_RULE_MATCH,
-                featureFlag.isExptIncludeAllRules(),
-                targetRule.isIncludedInExpt(),
-                featureFlag.getInfo().getKeyName(),
-                featureFlag.getInfo().getName());
-    }
-
-    private boolean ifUserMatchRule(FFCUser user, List<DataModel.RuleItem> clauses) {
-        return clauses.stream().allMatch(clause -> ifUserMatchClause(user, clause));
-    }
-
-    private boolean ifUserMatchClause(FFCUser user, DataModel.RuleItem clause) {
-        String op = clause.getOperation();
-        // segment hasn't any operation
-        op = StringUtils.isBlank(op) ? clause.getProperty() : op;
-        if (op.contains(THAN_CLAUSE)) {
-            return thanClause(user, clause);
-        } else if (op.equals(EQ_CLAUSE)) {
-            return equalsClause(user, clause);
-        } else if (op.equals(NEQ_CLAUSE)) {
-            return !equalsClause(user, clause);
-        } else if (op.equals(CONTAINS_CLAUSE)) {
-            return containsClause(user, clause);
-        } else if (op.equals(NOT_CONTAIN_CLAUSE)) {
-            return !containsClause(user, clause);
-        } else if (op.equals(IS_ONE_OF_CLAUSE)) {
-            return oneOfClause(user, clause);
-        } else if (op.equals(NOT_ONE_OF_CLAUSE)) {
-            return !oneOfClause(user, clause);
-        } else if (op.equals(STARTS_WITH_CLAUSE)) {
-            return startsWithClause(user, clause);
-        } else if (op.equals(ENDS_WITH_CLAUSE)) {
-            return endsWithClause(user, clause);
-        } else if (op.equals(IS_TRUE_CLAUSE)) {
-            return trueClause(user, clause);
-        } else if (op.equals(IS_FALSE_CLAUSE)) {
-            return falseClause(user, clause);
-        } else if (op.equals(MATCH_REGEX_CLAUSE)) {
-            return matchRegExClause(user, clause);
-        } else if (op.equals(NOT_MATCH_REGEX_CLAUSE)) {
-            return !matchRegExClause(user, clause);
-        } else if (op.equals(IS_IN_SEGMENT_CLAUSE)) {
-            return inSegmentClause(user, clause);
-        } else if (op.equals(NOT_IN_SEGMENT_CLAUSE)) {
-            return !inSegmentClause(user, clause);
-        }
-        return false;
-    }
-
-    private boolean inSegmentClause(FFCUser user, DataModel.RuleItem clause) {
-        String pv = user.getKey();
-        try {
-            List<String> clauseValues = JsonHelper.deserialize(clause.getValue(), new TypeToken<List<String>>() {
-            }.getType());
-            return clauseValues.stream().map(segmentGetter::get).anyMatch(segment -> {
-                if (segment == null) {
-                    return false;
+                    return EvaluationPlan.Flag.checkResult(flag.prerequisiteFailedResult);
+                }
+                DataModel.FeatureFlag preFlag = this.flagGetter.get(preFlagId);
+                if (preFlag == null) {
+                    if (decisionLogger.isWarnEnabled(preFlagId)) {
+                        String preFlagKey = FeatureFlagKeyExtension.unpackFeatureFlagId(preFlagId, 4);
+                        logger.warn("prerequisite flag {} not found", preFlagKey);
+                    }
+                    return EvaluationPlan.Flag.checkResult(flag.prerequisiteFailedResult);
                 }
-                Boolean isInSegment = segment.isMatchUser(pv);
-                if (isInSegment == null) {
-                    return segment
-                            .getRules()
-                            .stream()
-                            .anyMatch(rule -> ifUserMatchRule(user, rule.getRuleJsonContent()));
+                EvalResult er = matchUserVariation(preFlag.plan(), user, context, event);
+                // even if prerequisite flag is off, check if default value of prerequisite flag matches expected value
+                // if prerequisite failed, return the default value of this flag
+                if (!er.getIndex().equals(prerequisite.getValueOptionsVariationValue().getLocalId())) {
+                    return EvaluationPlan.Flag.checkResult(flag.prerequisiteFailedResult);
                 }
-                return isInSegment;
-            });
-        } catch (JsonParseException e) {
-            return false;
+            }
         }
+        return null;
     }
 
-    private boolean falseClause(FFCUser user, DataModel.RuleItem clause) {
-        String pv = user.getProperty(clause.getProperty());
-        //TODO add list of false keyword
-        return pv != null && pv.equalsIgnoreCase("false");
-    }
-
-    private boolean matchRegExClause(FFCUser user, DataModel.RuleItem clause) {
-        String pv = user.getProperty(clause.getProperty());
-        String clauseValue = clause.getValue();
-        return pv != null && Pattern.compile(clauseValue).matcher(pv).matches();
-    }
-
-    private boolean trueClause(FFCUser user, DataModel.RuleItem clause) {
-        String pv = user.getProperty(clause.getProperty());
-        //TODO add list of true keyword
-        return pv != null && pv.equalsIgnoreCase("true");
-    }
-
-    private boolean endsWithClause(FFCUser user, DataModel.RuleItem clause) {
-        String pv = user.getProperty(clause.getProperty());
-        String clauseValue = clause.getValue();
-        return pv != null && pv.endsWith(clauseValue);
+    private EvalResult matchTargetedUserVariation(EvaluationPlan.Flag flag, FFCUser user) {
+        return flag.targets.get(user.getKey());
     }
 
-    private boolean startsWithClause(FFCUser user, DataModel.RuleItem clause) {
-        String pv = user.getProperty(clause.getProperty());
-        String clauseValue = clause.getValue();
-        return pv != null && pv.startsWith(clauseValue);
-    }
-
-    private boolean thanClause(FFCUser user, DataModel.RuleItem clause) {
-        String pv = user.getProperty(clause.getProperty());
-        String clauseValue = clause.getValue();
-        if (!StringUtils.isNumeric(pv) || !StringUtils.isNumeric(clauseValue)) {
-            return false;
-        }
-        double pvNumber = new BigDecimal(pv).setScale(5, RoundingMode.HALF_UP).doubleValue();
-        double cvNumber = new BigDecimal(clauseValue).setScale(5, RoundingMode.HALF_UP).doubleValue();
-        switch (clause.getOperation()) {
-            case GE_CLAUSE:
-                return pvNumber >= cvNumber;
-            case GT_CLAUSE:
-                return pvNumber > cvNumber;
-            case LE_CLAUSE:
-                return pvNumber <= cvNumber;
-            case LT_CLAUSE:
-                return pvNumber < cvNumber;
-            default:
-                return false;
+    private EvalResult matchConditionedUserVariation(EvaluationPlan.Flag flag, FFCUser user, EvalContext context) {
+        if (flag.rules.length == 0) {
+            return null;
         }
-    }
-
-    private boolean equalsClause(FFCUser user, DataModel.RuleItem clause) {
-        String pv = user.getProperty(clause.getProperty());
-        String clauseValue = clause.getValue();
-        return clauseValue.equals(pv);
-    }
-
-    private boolean containsClause(FFCUser user, DataModel.RuleItem clause) {
-        String pv = user.getProperty(clause.getProperty());
-        String clauseValue = clause.getValue();
-        return pv != null && pv.contains(clauseValue);
-    }
-
-    private boolean oneOfClause(FFCUser user, DataModel.RuleItem clause) {
-        String pv = user.getProperty(clause.getProperty());
+        EvaluationPlan.SegmentMatcher segments = context == null ? this : context.segmentMatcher(this);
+        AttributeSlots slots = attributeSlots.get();
+        PreparedUser preparedUser = context == null ? PreparedUser.local(user, slots) : context.preparedUser(slots);
         try {
-            List<String> clauseValues = JsonHelper.deserialize(clause.getValue(), new TypeToken<List<String>>() {
-            }.getType());
-            return pv != null && clauseValues.contains(pv);
-        } catch (JsonParseException e) {
-            return false;
+            for (EvaluationPlan.Rule rule : flag.rules) {
+                if (rule.matches(preparedUser, segments)) {
+                    return rule.rollouts.evaluate(user.getKey(), buckets);
+                }
+            }
+            return null;
+        } finally {
+            if (context == null) {
+                // the user is not retained by the thread
+                preparedUser.reset(null);
+            }
         }
     }
 
-    private EvalResult matchDefaultUserVariation(DataModel.FeatureFlag featureFlag, FFCUser user) {
-        return getRollOutVariationOption(featureFlag.getInfo().getDefaultRulePercentageRollouts(),
-                user,
-                REASON_FALLTHROUGH,
-                featureFlag.isExptIncludeAllRules(),
-                featureFlag.getInfo().isDefaultRulePercentageRolloutsIncludedInExpt(),
-                featureFlag.getInfo().getKeyName(),
-                featureFlag.getInfo().getName());
-    }
-
-    private EvalResult getRollOutVariationOption
-            (Collection<DataModel.VariationOptionPercentageRollout> rollouts,
-             FFCUser user,
-             String reason,
-             Boolean exptIncludeAllRules,
-             Boolean ruleIncludedInExperiment,
-             String flagKeyName,
-             String flagName) {
-        String newUserKey = Base64.getEncoder().encodeToString(user.getKey().getBytes());
-        return rollouts.stream()
-                .filter(rollout -> VariationSplittingAlgorithm.ifKeyBelongsPercentage(user.getKey(), rollout.getRolloutPercentage()))
-                .findFirst()
-                .map(rollout -> EvalResult.of(rollout.getValueOption(), reason, isSendToExperiment(newUserKey, rollout, exptIncludeAllRules, ruleIncludedInExperiment), flagKeyName, flagName))
-                .orElse(null);
-    }
-
-    private boolean isSendToExperimentForTargetedUserVariation(Boolean exptIncludeAllRules) {
-        return exptIncludeAllRules == null || exptIncludeAllRules;
-    }
-
-    private boolean isSendToExperiment(String userKey,
-                                       DataModel.VariationOptionPercentageRollout rollout,
-                                       Boolean exptIncludeAllRules,
-                                       Boolean ruleIncludedInExperiment) {
-        if (exptIncludeAllRules == null) {
-            return true;
-        }
-
-        if (ruleIncludedInExperiment == null || rollout.getExptRollout() == null) {
-            return true;
-        }
-
-        if (!ruleIncludedInExperiment) {
-            return false;
-        }
-
-        double sendToExperimentPercentage = rollout.getExptRollout();
-        double splittingPercentage = rollout.getRolloutPercentage().get(1) - rollout.getRolloutPercentage().get(0);
-        if (sendToExperimentPercentage == 0D || splittingPercentage == 0D) {
-            return false;
-        }
-
-        double upperBound = sendToExperimentPercentage / splittingPercentage;
-        if (upperBound > 1D) {
-            upperBound = 1D;
-        }
-        return VariationSplittingAlgorithm.ifKeyBelongsPercentage(userKey, Arrays.asList(0D, upperBound));
+    private EvalResult matchDefaultUserVariation(EvaluationPlan.Flag flag, FFCUser user) {
+        return flag.defaultRollouts.evaluate(user.getKey(), buckets);
     }
-
-
 }
@@ -16,19 +16,32 @@ import co.featureflags.server.integrations.FFCUserContextHolder;
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterators;
 import org.apache.commons.codec.binary.Base64;
-import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 
 import java.io.IOException;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static co.featureflags.server.Evaluator.DEFAULT_JSON_VALUE;
 import static co.featureflags.server.Evaluator.FLAG_KEY_UNKNOWN;
@@ -52,8 +65,11 @@ import static com.google.common.base.Preconditions.checkNotNull;
 public final class FFCClientImp implements FFCClient {
 
     private final static Logger logger = Loggers.CLIENT;
+    // the number of users evaluated in parallel by the batch evaluation before the results are streamed
+    static final int BATCH_CHUNK_SIZE = 4096;
+    // the minimum number of flags evaluated by a task in the parallel mode of getAllLatestFlagsVariations
+    private static final int MIN_CHUNK_SIZE = 64;
 
-    private final String envSecret;
     private final boolean offline;
     private final DataStorage storage;
     private final Evaluator evaluator;
@@ -61,8 +77,20 @@ public final class FFCClientImp implements FFCClient {
     private final Status.DataUpdateStatusProvider dataUpdateStatusProvider;
     private final Status.DataUpdator dataUpdator;
     private final InsightProcessor insightProcessor;
+    private final Statistics.StatisticsProvider statisticsProvider;
+    private final DecisionLogger decisionLogger;
+    private final ForkJoinPool evaluationPool;
+    private final JsonVariationCache jsonVariationCache;
+    private final int parallelEvaluationThreshold;
+    private volatile PrerequisiteGraph prerequisiteGraph = PrerequisiteGraph.EMPTY;
+    private volatile AttributeSlots attributeSlots = AttributeSlots.EMPTY;
+    private volatile FeatureFlagKeyExtension.FeatureFlagIdResolver flagIdResolver = FeatureFlagKeyExtension.FeatureFlagIdResolver.EMPTY;
+    // the version of storage of the latest update, read without the lock of storage
+    private volatile long dataVersion = -1L;
 
     private final Consumer<InsightTypes.Event> eventHandler;
+    // no insight is sent in offline mode, so that evaluations don't need to create events
+    private final boolean insightEnabled;
 
     /**
      * Creates a new client to connect to featureflag.co with a specified configuration.
@@ -135,12 +163,14 @@ public final class FFCClientImp implements FFCClient {
         checkNotNull(config, "FFCConfig Should not be null");
         this.offline = config.isOffline();
         checkArgument(Base64.isBase64(envSecret), "envSecret is invalid");
-        this.envSecret = envSecret;
+        this.evaluationPool = config.getEvaluationPool();
+        this.parallelEvaluationThreshold = config.getParallelEvaluationThreshold();
         ContextImp context = new ContextImp(envSecret, config);
         //init components
         //Insight processor
         this.insightProcessor = config.getInsightProcessorFactory().createInsightProcessor(context);
         this.eventHandler = this.insightProcessor::send;
+        this.insightEnabled = !(config.getInsightProcessorFactory() instanceof FactoryImp.NullInsightProcessorFactory);
         //data storage
         this.storage = config.getDataStorageFactory().createDataStorage(context);
         //evaluator
@@ -152,9 +182,42 @@ public final class FFCClientImp implements FFCClient {
             DataStoreTypes.Item item = this.storage.get(SEGMENTS, key);
             return item == null ? null : (DataModel.Segment) item.item();
         };
-        this.evaluator = new EvaluatorImp(flagGetter, segmentGetter);
+        BucketCache bucketCache = new BucketCache(config.getBucketCacheSize());
+        this.decisionLogger = new DecisionLogger(Loggers.EVALUATION, config.getDecisionLogSamplingRate(), config.getDecisionLogInterval());
+        EvalResultCache evalResultCache = new EvalResultCache(config.getEvaluationCacheSize(),
+                config.getEvaluationCacheFlagKeys(),
+                this.storage::getVersion,
+                flagGetter,
+                segmentGetter);
+        SegmentCache segmentCache = new SegmentCache(config.getSegmentCacheSize());
+        this.evaluator = new EvaluatorImp(flagGetter,
+                segmentGetter,
+                bucketCache,
+                decisionLogger,
+                this::getPrerequisiteGraph,
+                this::getAttributeSlots,
+                evalResultCache,
+                segmentCache);
+        this.jsonVariationCache = new JsonVariationCache(config.getJsonVariationCacheSize(), config.getJsonVariationCopier());
+        this.statisticsProvider = new Statistics.StatisticsProviderImpl(bucketCache,
+                decisionLogger,
+                evalResultCache,
+                segmentCache,
+                jsonVariationCache);
         //data updator
-        Status.DataUpdatorImpl dataUpdatorImpl = new Status.DataUpdatorImpl(this.storage);
+        // the prerequisite graph and the attribute slots are built when the data are loaded, never by the evaluations
+        buildCompiledData();
+        Status.DataUpdatorImpl dataUpdatorImpl = new Status.DataUpdatorImpl(this.storage, new Status.FlagsUpdatedListener() {
+            @Override
+            public void initialized() {
+                buildCompiledData();
+            }
+
+            @Override
+            public void upserted(DataStoreTypes.Category category, DataStoreTypes.Item previous, DataStoreTypes.Item item) {
+                updateCompiledData(category, previous, item);
+            }
+        });
         this.dataUpdator = dataUpdatorImpl;
         //data processor
         this.updateProcessor = config.getUpdateProcessorFactory().createUpdateProcessor(context, dataUpdatorImpl);
@@ -219,7 +282,7 @@ public final class FFCClientImp implements FFCClient {
     public boolean boolVariation(String featureFlagKey, FFCUser user, Boolean defaultValue) {
         checkNotNull(defaultValue, "null defaultValue is invalid");
         Evaluator.EvalResult res = evaluateInternal(featureFlagKey, user, defaultValue, true);
-        return BooleanUtils.toBoolean(res.getValue());
+        return res.toBoolean();
     }
 
     @Override
@@ -232,6 +295,18 @@ public final class FFCClientImp implements FFCClient {
         return boolVariation(featureFlagKey, user, false);
     }
 
+    @Override
+    public BoolFlagHandle boolFlag(String featureFlagKey) {
+        checkArgument(StringUtils.isNotBlank(featureFlagKey), "featureFlagKey is blank");
+        return new BoolFlagHandle(this, featureFlagKey);
+    }
+
+    @Override
+    public EvaluationSession session(FFCUser user) {
+        InsightTypes.Event event = insightEnabled ? InsightTypes.FlagEvent.of(user) : InsightTypes.NullEvent.INSTANCE;
+        return new EvaluationSession(this, user, event, eventHandler);
+    }
+
     @Override
     public boolean isEnabled(String featureFlagKey) {
         return boolVariation(featureFlagKey, FFCUserContextHolder.getCurrentUser(), false);
@@ -241,7 +316,7 @@ public final class FFCClientImp implements FFCClient {
     public FlagState<Boolean> boolVariationDetail(String featureFlagKey, FFCUser user, Boolean defaultValue) {
         checkNotNull(defaultValue, "null defaultValue is invalid");
         Evaluator.EvalResult res = evaluateInternal(featureFlagKey, user, defaultValue, true);
-        return EvalDetail.of(BooleanUtils.toBoolean(res.getValue()), res.getIndex(), res.getReason(), featureFlagKey, featureFlagKey).toFlagState();
+        return EvalDetail.of(res.toBoolean(), res.getIndex(), res.getReason(), featureFlagKey, featureFlagKey).toFlagState();
     }
 
     @Override
@@ -252,7 +327,7 @@ public final class FFCClientImp implements FFCClient {
     public double doubleVariation(String featureFlagKey, FFCUser user, Double defaultValue) {
         checkNotNull(defaultValue, "null defaultValue is invalid");
         Evaluator.EvalResult res = evaluateInternal(featureFlagKey, user, defaultValue, true);
-        return Double.parseDouble(res.getValue());
+        return res.toDouble();
     }
 
     @Override
@@ -270,13 +345,13 @@ public final class FFCClientImp implements FFCClient {
     public FlagState<Double> doubleVariationDetail(String featureFlagKey, FFCUser user, Double defaultValue) {
         checkNotNull(defaultValue, "null defaultValue is invalid");
         Evaluator.EvalResult res = evaluateInternal(featureFlagKey, user, defaultValue, true);
-        return EvalDetail.of(Double.parseDouble(res.getValue()), res.getIndex(), res.getReason(), featureFlagKey, featureFlagKey).toFlagState();
+        return EvalDetail.of(res.toDouble(), res.getIndex(), res.getReason(), featureFlagKey, featureFlagKey).toFlagState();
     }
 
     public int intVariation(String featureFlagKey, FFCUser user, Integer defaultValue) {
         checkNotNull(defaultValue, "null defaultValue is invalid");
         Evaluator.EvalResult res = evaluateInternal(featureFlagKey, user, defaultValue, true);
-        return Double.valueOf(res.getValue()).intValue();
+        return (int) res.toDouble();
     }
 
     @Override
@@ -288,7 +363,7 @@ public final class FFCClientImp implements FFCClient {
     public FlagState<Integer> intVariationDetail(String featureFlagKey, FFCUser user, Integer defaultValue) {
         checkNotNull(defaultValue, "null defaultValue is invalid");
         Evaluator.EvalResult res = evaluateInternal(featureFlagKey, user, defaultValue, true);
-        return EvalDetail.of(Double.valueOf(res.getValue()).intValue(), res.getIndex(), res.getReason(), featureFlagKey, featureFlagKey).toFlagState();
+        return EvalDetail.of((int) res.toDouble(), res.getIndex(), res.getReason(), featureFlagKey, featureFlagKey).toFlagState();
     }
 
     @Override
@@ -299,7 +374,7 @@ public final class FFCClientImp implements FFCClient {
     public long longVariation(String featureFlagKey, FFCUser user, Long defaultValue) {
         checkNotNull(defaultValue, "null defaultValue is invalid");
         Evaluator.EvalResult res = evaluateInternal(featureFlagKey, user, defaultValue, true);
-        return Double.valueOf(res.getValue()).longValue();
+        return (long) res.toDouble();
     }
 
     @Override
@@ -311,7 +386,7 @@ public final class FFCClientImp implements FFCClient {
     public FlagState<Long> longVariationDetail(String featureFlagKey, FFCUser user, Long defaultValue) {
         checkNotNull(defaultValue, "null defaultValue is invalid");
         Evaluator.EvalResult res = evaluateInternal(featureFlagKey, user, defaultValue, true);
-        return EvalDetail.of(Double.valueOf(res.getValue()).longValue(), res.getIndex(), res.getReason(), featureFlagKey, featureFlagKey).toFlagState();
+        return EvalDetail.of((long) res.toDouble(), res.getIndex(), res.getReason(), featureFlagKey, featureFlagKey).toFlagState();
     }
 
     @Override
@@ -321,10 +396,10 @@ public final class FFCClientImp implements FFCClient {
 
     @Override
     public <T> T jsonVariation(String featureFlagKey, FFCUser user, Class<T> clazz, T defaultValue) {
-        String json = variation(featureFlagKey, user, DEFAULT_JSON_VALUE);
-        if (DEFAULT_JSON_VALUE.equals(json)) return defaultValue;
+        Evaluator.EvalResult res = evaluateInternal(featureFlagKey, user, DEFAULT_JSON_VALUE, false);
+        if (DEFAULT_JSON_VALUE.equals(res.getValue())) return defaultValue;
         try {
-            return JsonHelper.deserialize(json, clazz);
+            return jsonVariationCache.deserialize(res, clazz);
         } catch (JsonParseException ex) {
             logger.error("FFC JAVA SDK: unexpected error in evaluation", ex);
             return defaultValue;
@@ -334,14 +409,7 @@ public final class FFCClientImp implements FFCClient {
 
     @Override
     public <T> T jsonVariation(String featureFlagKey, Class<T> clazz, T defaultValue) {
-        String json = variation(featureFlagKey, DEFAULT_JSON_VALUE);
-        if (DEFAULT_JSON_VALUE.equals(json)) return defaultValue;
-        try {
-            return JsonHelper.deserialize(json, clazz);
-        } catch (JsonParseException ex) {
-            logger.error("FFC JAVA SDK: unexpected error in evaluation", ex);
-            return defaultValue;
-        }
+        return jsonVariation(featureFlagKey, FFCUserContextHolder.getCurrentUser(), clazz, defaultValue);
     }
 
     @Override
@@ -352,7 +420,7 @@ public final class FFCClientImp implements FFCClient {
             value = defaultValue;
         } else {
             try {
-                value = JsonHelper.deserialize(res.getValue(), clazz);
+                value = jsonVariationCache.deserialize(res, clazz);
             } catch (JsonParseException ex) {
                 logger.error("FFC JAVA SDK: unexpected error in evaluation", ex);
                 value = defaultValue;
@@ -366,34 +434,87 @@ public final class FFCClientImp implements FFCClient {
         return jsonVariationDetail(featureFlagKey, FFCUserContextHolder.getCurrentUser(), clazz, defaultValue);
     }
 
-    Evaluator.EvalResult evaluateInternal(String featureFlagKey, FFCUser user, Object defaultValue, boolean checkType) {
-        try {
-            if (!isInitialized()) {
-                Loggers.EVALUATION.warn("FFC JAVA SDK: evaluation is called before Java SDK client is initialized for feature flag, well using the default value");
-                return Evaluator.EvalResult.error(defaultValue.toString(), REASON_CLIENT_NOT_READY, featureFlagKey, FLAG_NAME_UNKNOWN);
-            }
-            if (StringUtils.isBlank(featureFlagKey)) {
-                Loggers.EVALUATION.warn("FFC JAVA SDK: null feature flag key; returning default value");
-                return Evaluator.EvalResult.error(defaultValue.toString(), REASON_FLAG_NOT_FOUND, featureFlagKey, FLAG_NAME_UNKNOWN);
+    @Override
+    public Stream<UserVariation> batchVariation(String featureFlagKey, Collection<FFCUser> users, String defaultValue, boolean batchInsights) {
+        checkNotNull(users, "null users are invalid");
+        return batchVariation(featureFlagKey, users.stream(), defaultValue, batchInsights);
+    }
+
+    @Override
+    public Stream<UserVariation> batchVariation(String featureFlagKey, Stream<FFCUser> users, String defaultValue, boolean batchInsights) {
+        checkNotNull(users, "null users are invalid");
+        // the flag is resolved once for all the users
+        DataModel.FeatureFlag flag = isInitialized() && StringUtils.isNotBlank(featureFlagKey) ? getFlagInternal(featureFlagKey) : null;
+        if (flag == null) {
+            Evaluator.EvalResult res = evaluateInternal(featureFlagKey, null, defaultValue, false);
+            FlagState<String> state = EvalDetail.of(res.getValue(), res.getIndex(), res.getReason(), featureFlagKey, featureFlagKey).toFlagState();
+            return users.map(user -> UserVariation.of(user, state));
+        }
+        Iterator<List<FFCUser>> chunks = Iterators.partition(users.iterator(), BATCH_CHUNK_SIZE);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(chunks, Spliterator.ORDERED), false)
+                .flatMap(chunk -> evaluateChunk(flag, featureFlagKey, chunk, defaultValue, batchInsights))
+                .onClose(users::close);
+    }
+
+    private Stream<UserVariation> evaluateChunk(DataModel.FeatureFlag flag,
+                                                String featureFlagKey,
+                                                List<FFCUser> users,
+                                                String defaultValue,
+                                                boolean batchInsights) {
+        int size = users.size();
+        UserVariation[] results = new UserVariation[size];
+        InsightTypes.Event[] events = new InsightTypes.Event[size];
+        evaluationPool.submit(() -> IntStream.range(0, size).parallel().forEach(i -> {
+            FFCUser user = users.get(i);
+            Evaluator.EvalResult res = evaluateUser(flag, featureFlagKey, user, defaultValue, events, i);
+            results[i] = UserVariation.of(user, EvalDetail.of(res.getValue(), res.getIndex(), res.getReason(), featureFlagKey, featureFlagKey).toFlagState());
+            if (!batchInsights && events[i] != null) {
+                eventHandler.accept(events[i]);
             }
-            DataModel.FeatureFlag flag = getFlagInternal(featureFlagKey);
-            if (flag == null) {
-                Loggers.EVALUATION.warn("FFC JAVA SDK: unknown feature flag {}; returning default value", featureFlagKey);
-                return Evaluator.EvalResult.error(defaultValue.toString(), REASON_FLAG_NOT_FOUND, featureFlagKey, FLAG_NAME_UNKNOWN);
+        })).join();
+        if (batchInsights && insightEnabled) {
+            InsightTypes.Event batch = InsightTypes.BatchEvent.of(size);
+            for (InsightTypes.Event event : events) {
+                batch.add(event);
             }
+            eventHandler.accept(batch);
+        }
+        return Arrays.stream(results);
+    }
+
+    // the event of a user is only set if the evaluation succeeded, as in evaluateInternal
+    private Evaluator.EvalResult evaluateUser(DataModel.FeatureFlag flag,
+                                              String featureFlagKey,
+                                              FFCUser user,
+                                              String defaultValue,
+                                              InsightTypes.Event[] events,
+                                              int index) {
+        try {
             if (user == null || StringUtils.isBlank(user.getKey())) {
-                Loggers.EVALUATION.warn("FFC JAVA SDK: null user for feature flag {}, returning default value", featureFlagKey);
-                return Evaluator.EvalResult.error(defaultValue.toString(), REASON_USER_NOT_SPECIFIED, featureFlagKey, FLAG_NAME_UNKNOWN);
+                if (decisionLogger.isWarnEnabled(featureFlagKey)) {
+                    Loggers.EVALUATION.warn("FFC JAVA SDK: null user for feature flag {}, returning default value", featureFlagKey);
+                }
+                return Evaluator.EvalResult.error(defaultValue, REASON_USER_NOT_SPECIFIED, featureFlagKey, FLAG_NAME_UNKNOWN);
             }
-
-            InsightTypes.Event event = InsightTypes.FlagEvent.of(user);
+            InsightTypes.Event event = insightEnabled ? InsightTypes.FlagEvent.of(user) : InsightTypes.NullEvent.INSTANCE;
             Evaluator.EvalResult res = evaluator.evaluate(flag, user, event);
-            if (checkType && !res.checkType(defaultValue)) {
-                Loggers.EVALUATION.warn("FFC JAVA SDK: evaluation result {} didn't matched expected type ", res.getValue());
-                return Evaluator.EvalResult.error(defaultValue.toString(), REASON_WRONG_TYPE, res.getKeyName(), res.getName());
+            if (insightEnabled) {
+                events[index] = event;
             }
-            eventHandler.accept(event);
             return res;
+        } catch (Exception ex) {
+            logger.error("FFC JAVA SDK: unexpected error in evaluation", ex);
+            return Evaluator.EvalResult.error(defaultValue, REASON_ERROR, featureFlagKey, FLAG_NAME_UNKNOWN);
+        }
+    }
+
+    Evaluator.EvalResult evaluateInternal(String featureFlagKey, FFCUser user, Object defaultValue, boolean checkType) {
+        try {
+            Evaluator.EvalResult error = checkReady(featureFlagKey, defaultValue);
+            if (error != null) {
+                return error;
+            }
+            return evaluateFlag(getFlagInternal(featureFlagKey), featureFlagKey, user, defaultValue, checkType);
         } catch (Exception ex) {
             logger.error("FFC JAVA SDK: unexpected error in evaluation", ex);
             return Evaluator.EvalResult.error(defaultValue.toString(), REASON_ERROR, featureFlagKey, FLAG_NAME_UNKNOWN);
@@ -401,8 +522,174 @@ public final class FFCClientImp implements FFCClient {
 
     }
 
+    /**
+     * evaluates a flag by its handle, the flag is resolved again only if the data were updated; the key was checked
+     * when the handle was created and the type of the flag is checked when it's resolved
+     */
+    Evaluator.EvalResult evaluateInternal(BoolFlagHandle handle, FFCUser user, Boolean defaultValue) {
+        String featureFlagKey = handle.getKey();
+        try {
+            Evaluator.EvalResult error = checkInitialized(featureFlagKey, defaultValue);
+            if (error != null) {
+                return error;
+            }
+            BoolFlagHandle.Resolved resolved = handle.resolve(dataVersion, this::getFlagInternal);
+            error = resolved.flag == null ? flagNotFound(featureFlagKey, defaultValue) : checkUser(featureFlagKey, user, defaultValue);
+            if (error != null) {
+                return error;
+            }
+            return evaluateCheckedFlag(resolved.flag, featureFlagKey, user, defaultValue, resolved.checkType);
+        } catch (Exception ex) {
+            logger.error("FFC JAVA SDK: unexpected error in evaluation", ex);
+            return Evaluator.EvalResult.error(defaultValue.toString(), REASON_ERROR, featureFlagKey, FLAG_NAME_UNKNOWN);
+        }
+    }
+
+    /**
+     * evaluates a flag in a session: the user state is shared by the evaluations of the session and the variations
+     * are added to the event of the session, the event of a failed evaluation is dropped
+     */
+    Evaluator.EvalResult evaluateInternal(String featureFlagKey,
+                                          Evaluator.EvalContext context,
+                                          InsightTypes.Event event,
+                                          Object defaultValue,
+                                          boolean checkType) {
+        try {
+            Evaluator.EvalResult error = checkReady(featureFlagKey, defaultValue);
+            if (error != null) {
+                return error;
+            }
+            DataModel.FeatureFlag flag = getFlagInternal(featureFlagKey);
+            error = checkFlagAndUser(flag, featureFlagKey, context.user, defaultValue);
+            if (error != null) {
+                return error;
+            }
+            // the variations of this evaluation are removed from the event of the session if it fails
+            int mark = event.size();
+            try {
+                Evaluator.EvalResult res = evaluator.evaluate(flag, context, event);
+                error = checkType ? checkType(res, featureFlagKey, defaultValue) : null;
+                if (error != null) {
+                    event.truncate(mark);
+                    return error;
+                }
+                return res;
+            } catch (RuntimeException ex) {
+                event.truncate(mark);
+                throw ex;
+            }
+        } catch (Exception ex) {
+            logger.error("FFC JAVA SDK: unexpected error in evaluation", ex);
+            return Evaluator.EvalResult.error(defaultValue.toString(), REASON_ERROR, featureFlagKey, FLAG_NAME_UNKNOWN);
+        }
+    }
+
+    /**
+     * @return an error if the client is not ready or the key is blank, null otherwise
+     */
+    private Evaluator.EvalResult checkReady(String featureFlagKey, Object defaultValue) {
+        Evaluator.EvalResult error = checkInitialized(featureFlagKey, defaultValue);
+        if (error != null) {
+            return error;
+        }
+        if (StringUtils.isBlank(featureFlagKey)) {
+            if (decisionLogger.isWarnEnabled(featureFlagKey)) {
+                Loggers.EVALUATION.warn("FFC JAVA SDK: null feature flag key; returning default value");
+            }
+            return Evaluator.EvalResult.error(defaultValue.toString(), REASON_FLAG_NOT_FOUND, featureFlagKey, FLAG_NAME_UNKNOWN);
+        }
+        return null;
+    }
+
+    /**
+     * @return an error if the client is not ready, null otherwise
+     */
+    private Evaluator.EvalResult checkInitialized(String featureFlagKey, Object defaultValue) {
+        if (!isInitialized()) {
+            if (decisionLogger.isWarnEnabled(REASON_CLIENT_NOT_READY)) {
+                Loggers.EVALUATION.warn("FFC JAVA SDK: evaluation is called before Java SDK client is initialized for feature flag, well using the default value");
+            }
+            return Evaluator.EvalResult.error(defaultValue.toString(), REASON_CLIENT_NOT_READY, featureFlagKey, FLAG_NAME_UNKNOWN);
+        }
+        return null;
+    }
+
+    /**
+     * @return an error if the flag is not found or the user is not specified, null otherwise
+     */
+    private Evaluator.EvalResult checkFlagAndUser(DataModel.FeatureFlag flag, String featureFlagKey, FFCUser user, Object defaultValue) {
+        if (flag == null) {
+            return flagNotFound(featureFlagKey, defaultValue);
+        }
+        return checkUser(featureFlagKey, user, defaultValue);
+    }
+
+    private Evaluator.EvalResult flagNotFound(String featureFlagKey, Object defaultValue) {
+        if (decisionLogger.isWarnEnabled(featureFlagKey)) {
+            Loggers.EVALUATION.warn("FFC JAVA SDK: unknown feature flag {}; returning default value", featureFlagKey);
+        }
+        return Evaluator.EvalResult.error(defaultValue.toString(), REASON_FLAG_NOT_FOUND, featureFlagKey, FLAG_NAME_UNKNOWN);
+    }
+
+    /**
+     * @return an error if the user is not specified, null otherwise
+     */
+    private Evaluator.EvalResult checkUser(String featureFlagKey, FFCUser user, Object defaultValue) {
+        if (user == null || StringUtils.isBlank(user.getKey())) {
+            if (decisionLogger.isWarnEnabled(featureFlagKey)) {
+                Loggers.EVALUATION.warn("FFC JAVA SDK: null user for feature flag {}, returning default value", featureFlagKey);
+            }
+            return Evaluator.EvalResult.error(defaultValue.toString(), REASON_USER_NOT_SPECIFIED, featureFlagKey, FLAG_NAME_UNKNOWN);
+        }
+        return null;
+    }
+
+    /**
+     * @return an error if the value is not of the type of the default value, null otherwise
+     */
+    private Evaluator.EvalResult checkType(Evaluator.EvalResult res, String featureFlagKey, Object defaultValue) {
+        if (res.checkType(defaultValue)) {
+            return null;
+        }
+        if (decisionLogger.isWarnEnabled(featureFlagKey)) {
+            Loggers.EVALUATION.warn("FFC JAVA SDK: evaluation result {} didn't matched expected type ", res.getValue());
+        }
+        return Evaluator.EvalResult.error(defaultValue.toString(), REASON_WRONG_TYPE, res.getKeyName(), res.getName());
+    }
+
+    private Evaluator.EvalResult evaluateFlag(DataModel.FeatureFlag flag,
+                                              String featureFlagKey,
+                                              FFCUser user,
+                                              Object defaultValue,
+                                              boolean checkType) {
+        Evaluator.EvalResult error = checkFlagAndUser(flag, featureFlagKey, user, defaultValue);
+        if (error != null) {
+            return error;
+        }
+        return evaluateCheckedFlag(flag, featureFlagKey, user, defaultValue, checkType);
+    }
+
+    // the flag and the user are checked
+    private Evaluator.EvalResult evaluateCheckedFlag(DataModel.FeatureFlag flag,
+                                                     String featureFlagKey,
+                                                     FFCUser user,
+                                                     Object defaultValue,
+                                                     boolean checkType) {
+        InsightTypes.Event event = insightEnabled ? InsightTypes.FlagEvent.of(user) : InsightTypes.NullEvent.INSTANCE;
+        Evaluator.EvalResult res = evaluator.evaluate(flag, user, event);
+        Evaluator.EvalResult error = checkType ? checkType(res, featureFlagKey, defaultValue) : null;
+        if (error != null) {
+            return error;
+        }
+        eventHandler.accept(event);
+        return res;
+    }
+
     private DataModel.FeatureFlag getFlagInternal(String featureFlagKey) {
-        String flagId = FeatureFlagKeyExtension.FeatureFlagIdByEnvSecret.of(envSecret, featureFlagKey).getFeatureFlagId();
+        String flagId = flagIdResolver.flagIdOf(featureFlagKey);
+        if (flagId == null) {
+            return null;
+        }
         DataStoreTypes.Item item = storage.get(FEATURES, flagId);
         return item == null ? null : (DataModel.FeatureFlag) item.item();
     }
@@ -438,6 +725,11 @@ public final class FFCClientImp implements FFCClient {
         return dataUpdateStatusProvider;
     }
 
+    @Override
+    public Statistics.StatisticsProvider getStatisticsProvider() {
+        return statisticsProvider;
+    }
+
     @Override
     public boolean initializeFromExternalJson(String json) {
         if (offline && StringUtils.isNotBlank(json)) {
@@ -458,6 +750,77 @@ public final class FFCClientImp implements FFCClient {
 
     @Override
     public AllFlagStates<String> getAllLatestFlagsVariations(FFCUser user) {
+        return evaluateAllFlags(user, null);
+    }
+
+    @Override
+    public ChangedFlagStates getChangedFlagsVariations(FFCUser user, long sinceVersion) {
+        // read first, so that a change made in the meantime is returned again in the next call
+        long version = storage.getVersion();
+        Set<String> changedFlags = storage.getChangedKeys(FEATURES, sinceVersion);
+        Set<String> changedSegments = storage.getChangedKeys(SEGMENTS, sinceVersion);
+        if (!isInitialized() || changedFlags == null || changedSegments == null) {
+            return ChangedFlagStates.of(version, true, evaluateAllFlags(user, null), ImmutableList.of());
+        }
+        Set<String> flagIds = new HashSet<>();
+        Map<String, Boolean> visited = new HashMap<>();
+        for (DataStoreTypes.Item item : storage.getAll(FEATURES).values()) {
+            DataModel.FeatureFlag flag = (DataModel.FeatureFlag) item.item();
+            if (isChanged(flag.plan(), changedFlags, changedSegments, visited)) {
+                flagIds.add(flag.getId());
+            }
+        }
+        ImmutableList.Builder<String> removedFlagKeys = ImmutableList.builder();
+        for (String flagId : changedFlags) {
+            if (storage.get(FEATURES, flagId) == null) {
+                removedFlagKeys.add(FeatureFlagKeyExtension.unpackFeatureFlagId(flagId, 4));
+            }
+        }
+        return ChangedFlagStates.of(version, false, evaluateAllFlags(user, flagIds), removedFlagKeys.build());
+    }
+
+    // a flag changed if itself, one of its segments or one of its prerequisites changed
+    private boolean isChanged(EvaluationPlan.Flag flag, Set<String> changedFlags, Set<String> changedSegments, Map<String, Boolean> visited) {
+        Boolean changed = visited.get(flag.id);
+        if (changed != null) {
+            return changed;
+        }
+        // a circular prerequisite doesn't change the flags by itself
+        visited.put(flag.id, Boolean.FALSE);
+        changed = changedFlags.contains(flag.id) || isChanged(flag.rules, changedSegments, new HashSet<>());
+        for (int i = 0; !changed && i < flag.prerequisites.length; i++) {
+            String preFlagId = flag.prerequisites[i].getPrerequisiteFeatureFlagId();
+            DataStoreTypes.Item item = storage.get(FEATURES, preFlagId);
+            changed = changedFlags.contains(preFlagId)
+                    || (item != null && isChanged(((DataModel.FeatureFlag) item.item()).plan(), changedFlags, changedSegments, visited));
+        }
+        visited.put(flag.id, changed);
+        return changed;
+    }
+
+    private boolean isChanged(EvaluationPlan.Rule[] rules, Set<String> changedSegments, Set<String> visitedSegments) {
+        for (EvaluationPlan.Rule rule : rules) {
+            for (EvaluationPlan.Clause clause : rule.clauses) {
+                if (!clause.operator.isSegmentValue()) {
+                    continue;
+                }
+                for (String segmentId : clause.values) {
+                    if (changedSegments.contains(segmentId)) {
+                        return true;
+                    }
+                    DataStoreTypes.Item item = storage.get(SEGMENTS, segmentId);
+                    if (item != null && visitedSegments.add(segmentId)
+                            && isChanged(((DataModel.Segment) item.item()).plan().rules, changedSegments, visitedSegments)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // evaluates the flags whose ids are given, all of them if null
+    private AllFlagStates<String> evaluateAllFlags(FFCUser user, Set<String> flagIds) {
         ImmutableMap.Builder<EvalDetail<String>, InsightTypes.Event> builder = ImmutableMap.builder();
         boolean success = true;
         String errorString = null;
@@ -476,13 +839,32 @@ public final class FFCClientImp implements FFCClient {
                 success = false;
                 errorString = REASON_USER_NOT_SPECIFIED;
             } else {
-                Map<String, DataStoreTypes.Item> allFlags = this.storage.getAll(FEATURES);
-                for (DataStoreTypes.Item item : allFlags.values()) {
-                    InsightTypes.Event event = InsightTypes.FlagEvent.of(user);
+                // the flags are returned in the order of storage, and evaluated in the order of their prerequisites
+                List<DataModel.FeatureFlag> flags = new ArrayList<>();
+                for (DataStoreTypes.Item item : this.storage.getAll(FEATURES).values()) {
                     DataModel.FeatureFlag flag = (DataModel.FeatureFlag) item.item();
-                    Evaluator.EvalResult res = evaluator.evaluate(flag, user, event);
-                    ed = EvalDetail.of(res.getValue(), res.getIndex(), res.getReason(), res.getKeyName(), res.getName());
-                    builder.put(ed, event);
+                    if (flagIds == null || flagIds.contains(flag.getId())) {
+                        flags.add(flag);
+                    }
+                }
+                int[] order = prerequisiteOrder(flags);
+                int size = flags.size();
+                @SuppressWarnings({"unchecked", "rawtypes"})
+                EvalDetail<String>[] details = new EvalDetail[size];
+                InsightTypes.Event[] events = new InsightTypes.Event[size];
+                if (parallelEvaluationThreshold > 0 && size >= parallelEvaluationThreshold) {
+                    // a chunk of flags per task, so that a prerequisite is shared by the flags of a chunk
+                    int chunkSize = Math.max(MIN_CHUNK_SIZE, (size + evaluationPool.getParallelism() * 4 - 1) / (evaluationPool.getParallelism() * 4));
+                    int chunks = (size + chunkSize - 1) / chunkSize;
+                    evaluationPool.submit(() -> IntStream.range(0, chunks)
+                            .parallel()
+                            .forEach(chunk -> evaluateFlags(flags, order, user, chunk * chunkSize, Math.min(size, (chunk + 1) * chunkSize), details, events)))
+                            .join();
+                } else {
+                    evaluateFlags(flags, order, user, 0, size, details, events);
+                }
+                for (int i = 0; i < size; i++) {
+                    builder.put(details[i], events[i]);
                 }
             }
         } catch (Exception ex) {
@@ -495,6 +877,93 @@ public final class FFCClientImp implements FFCClient {
         return new Implicits.ComplexAllFlagStates<>(success, errorString, builder.build(), eventHandler);
     }
 
+    // evaluates the flags of the evaluation order in [from, to), the results are set at the index of the flags
+    private void evaluateFlags(List<DataModel.FeatureFlag> flags,
+                               int[] order,
+                               FFCUser user,
+                               int from,
+                               int to,
+                               EvalDetail<String>[] details,
+                               InsightTypes.Event[] events) {
+        // a prerequisite shared by several flags is evaluated once in the context
+        Evaluator.EvalContext context = new Evaluator.EvalContext(user);
+        for (int k = from; k < to; k++) {
+            int i = order[k];
+            InsightTypes.Event event = InsightTypes.FlagEvent.of(user);
+            Evaluator.EvalResult res = evaluator.evaluate(flags.get(i), context, event);
+            details[i] = EvalDetail.of(res.getValue(), res.getIndex(), res.getReason(), res.getKeyName(), res.getName());
+            events[i] = event;
+        }
+    }
+
+    // the indices of the flags in the order of evaluation: the prerequisites first, the flags unknown to the graph at last
+    private int[] prerequisiteOrder(List<DataModel.FeatureFlag> flags) {
+        Map<String, Integer> indices = new HashMap<>();
+        for (int i = 0; i < flags.size(); i++) {
+            indices.put(flags.get(i).getId(), i);
+        }
+        int[] order = new int[flags.size()];
+        boolean[] added = new boolean[flags.size()];
+        int n = 0;
+        for (String flagId : getPrerequisiteGraph().order) {
+            Integer i = indices.get(flagId);
+            if (i != null && !added[i]) {
+                order[n++] = i;
+                added[i] = true;
+            }
+        }
+        for (int i = 0; i < flags.size(); i++) {
+            if (!added[i]) {
+                order[n++] = i;
+            }
+        }
+        return order;
+    }
+
+    // the graph of the latest update of the flags, a storage updated meanwhile is safe as the evaluation context
+    // also detects the cycles
+    private PrerequisiteGraph getPrerequisiteGraph() {
+        return prerequisiteGraph;
+    }
+
+    // the slots of the latest update of the flags and segments, a prepared user keeps the ones it was prepared with
+    private AttributeSlots getAttributeSlots() {
+        return attributeSlots;
+    }
+
+    // built in the update thread from all the data when the storage is initialized
+    private synchronized void buildCompiledData() {
+        long version = storage.getVersion();
+        List<DataModel.FeatureFlag> flags = allItems(FEATURES);
+        prerequisiteGraph = PrerequisiteGraph.build(flags, version);
+        attributeSlots = AttributeSlots.build(flags, allItems(SEGMENTS), version);
+        flagIdResolver = FeatureFlagKeyExtension.FeatureFlagIdResolver.build(flags);
+        // published last, so that a handle resolving its flag again sees the data of this version
+        dataVersion = version;
+    }
+
+    // updated in the update thread for each upserted flag or segment, without reading all the data; the previous item
+    // is the one the compiled data were built with, as the updates are applied in order
+    private synchronized void updateCompiledData(DataStoreTypes.Category category, DataStoreTypes.Item previous, DataStoreTypes.Item item) {
+        long version = storage.getVersion();
+        if (category == FEATURES) {
+            prerequisiteGraph = prerequisiteGraph.update(item.item(), version);
+            flagIdResolver = flagIdResolver.update(previous == null ? null : previous.item(), item.item());
+        }
+        AttributeSlots slots = attributeSlots.update(previous == null ? null : previous.item(), item.item(), version);
+        attributeSlots = slots == null ? AttributeSlots.build(allItems(FEATURES), allItems(SEGMENTS), version) : slots;
+        dataVersion = version;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends DataModel.TimestampData> List<T> allItems(DataStoreTypes.Category category) {
+        List<T> items = new ArrayList<>();
+        for (DataStoreTypes.Item item : storage.getAll(category).values()) {
+            items.add((T) item.item());
+        }
+        return items;
+    }
+
     @Override
     public List<UserTag> getAllUserTags() {
         ImmutableList.Builder<UserTag> tags = new ImmutableList.Builder<>();
@@ -4,8 +4,12 @@ import co.featureflags.server.exterior.DataStorageFactory;
 import co.featureflags.server.exterior.HttpConfigFactory;
 import co.featureflags.server.exterior.InsightProcessorFactory;
 import co.featureflags.server.exterior.UpdateProcessorFactory;
+import com.google.common.collect.ImmutableList;
 
 import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.UnaryOperator;
 
 /**
  * This class exposes advanced configuration options for the {@link co.featureflags.server.exterior.FFCClient}
@@ -25,6 +29,16 @@ public class FFCConfig {
 
     private boolean offline;
     private Duration startWaitTime;
+    private int bucketCacheSize;
+    private double decisionLogSamplingRate;
+    private Duration decisionLogInterval;
+    private int evaluationCacheSize;
+    private List<String> evaluationCacheFlagKeys;
+    private int segmentCacheSize;
+    private ForkJoinPool evaluationPool;
+    private int parallelEvaluationThreshold;
+    private int jsonVariationCacheSize;
+    private UnaryOperator<Object> jsonVariationCopier;
 
     private FFCConfig() {
         super();
@@ -54,9 +68,59 @@ public class FFCConfig {
         return startWaitTime;
     }
 
+    public int getBucketCacheSize() {
+        return bucketCacheSize;
+    }
+
+    public double getDecisionLogSamplingRate() {
+        return decisionLogSamplingRate;
+    }
+
+    public Duration getDecisionLogInterval() {
+        return decisionLogInterval;
+    }
+
+    public int getEvaluationCacheSize() {
+        return evaluationCacheSize;
+    }
+
+    public List<String> getEvaluationCacheFlagKeys() {
+        return evaluationCacheFlagKeys;
+    }
+
+    public int getSegmentCacheSize() {
+        return segmentCacheSize;
+    }
+
+    public ForkJoinPool getEvaluationPool() {
+        return evaluationPool;
+    }
+
+    public int getParallelEvaluationThreshold() {
+        return parallelEvaluationThreshold;
+    }
+
+    public int getJsonVariationCacheSize() {
+        return jsonVariationCacheSize;
+    }
+
+    public UnaryOperator<Object> getJsonVariationCopier() {
+        return jsonVariationCopier;
+    }
+
     public FFCConfig(Builder builder) {
         this.offline = builder.offline;
         this.startWaitTime = builder.startWaitTime == null ? DEFAULT_START_WAIT_TIME : builder.startWaitTime;
+        this.bucketCacheSize = builder.bucketCacheSize == null ? BucketCache.DEFAULT_SIZE : builder.bucketCacheSize;
+        this.decisionLogSamplingRate = builder.decisionLogSamplingRate == null ? DecisionLogger.DEFAULT_SAMPLING_RATE : builder.decisionLogSamplingRate;
+        this.decisionLogInterval = builder.decisionLogInterval == null ? DecisionLogger.DEFAULT_INTERVAL : builder.decisionLogInterval;
+        this.evaluationCacheSize = builder.evaluationCacheSize;
+        this.evaluationCacheFlagKeys = builder.evaluationCacheFlagKeys == null ? ImmutableList.of() : builder.evaluationCacheFlagKeys;
+        this.segmentCacheSize = builder.segmentCacheSize;
+        this.evaluationPool = builder.evaluationPool == null ? ForkJoinPool.commonPool() : builder.evaluationPool;
+        this.parallelEvaluationThreshold = builder.parallelEvaluationThreshold;
+        this.jsonVariationCacheSize = builder.jsonVariationCacheSize;
+        this.jsonVariationCopier = builder.jsonVariationCopier == null ? UnaryOperator.identity() : builder.jsonVariationCopier;
         if (builder.offline) {
             Loggers.CLIENT.info("FFC JAVA SDK: SDK is in offline mode");
             this.updateProcessorFactory = Factory.externalOnlyDataUpdate();
@@ -89,6 +153,16 @@ public class FFCConfig {
         private HttpConfigFactory httpConfigFactory;
         private InsightProcessorFactory insightProcessorFactory;
         private Duration startWaitTime;
+        private Integer bucketCacheSize;
+        private Double decisionLogSamplingRate;
+        private Duration decisionLogInterval;
+        private int evaluationCacheSize = 0;
+        private List<String> evaluationCacheFlagKeys;
+        private int segmentCacheSize = 0;
+        private ForkJoinPool evaluationPool;
+        private int parallelEvaluationThreshold = 0;
+        private int jsonVariationCacheSize = 0;
+        private UnaryOperator<Object> jsonVariationCopier;
         private boolean offline = false;
 
         public Builder() {
@@ -171,6 +245,141 @@ public class FFCConfig {
             return this;
         }
 
+        /**
+         * Set the maximum number of user keys whose bucketing percentages are cached.
+         * <p>
+         * The percentages used by percentage rollouts and experiments depend only on the user key, the cache avoids
+         * hashing the same user key for each flag. Setting this to zero or a negative value disables the cache.
+         * The default is 10000.
+         *
+         * @param bucketCacheSize maximum number of cached user keys
+         * @return the builder
+         */
+        public Builder bucketCacheSize(int bucketCacheSize) {
+            this.bucketCacheSize = bucketCacheSize;
+            return this;
+        }
+
+        /**
+         * Set the ratio of the evaluation logs to write, such as the evaluated variations or unknown flags.
+         * <p>
+         * 1 writes all the logs allowed by {@link #decisionLogInterval(Duration)}, 0 writes none. The default is 1.
+         *
+         * @param decisionLogSamplingRate a ratio between 0 and 1
+         * @return the builder
+         */
+        public Builder decisionLogSamplingRate(double decisionLogSamplingRate) {
+            this.decisionLogSamplingRate = decisionLogSamplingRate;
+            return this;
+        }
+
+        /**
+         * Set the minimum interval between two evaluation logs of a same flag, for example 1 second to keep the logs of
+         * the hot flags readable. Setting this to a zero or negative duration disables the rate limiting, which is the default.
+         *
+         * @param decisionLogInterval minimum interval between the logs of a flag; null to use the default
+         * @return the builder
+         */
+        public Builder decisionLogInterval(Duration decisionLogInterval) {
+            this.decisionLogInterval = decisionLogInterval;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of evaluation results to cache; the cache is disabled by default.
+         * <p>
+         * The cache is meant for a few flags evaluated many times for the same users, see {@link #evaluationCacheFlagKeys(String...)}.
+         * A result is reused as long as the flag, its prerequisites and its segments are not updated and the user attributes
+         * read by them are the same; the update of other flags or segments doesn't invalidate the result.
+         *
+         * @param evaluationCacheSize maximum number of cached results, zero or a negative value disables the cache
+         * @return the builder
+         */
+        public Builder evaluationCacheSize(int evaluationCacheSize) {
+            this.evaluationCacheSize = evaluationCacheSize;
+            return this;
+        }
+
+        /**
+         * Set the keys of the flags whose results are cached, by default all the flags are cached if the cache
+         * is enabled by {@link #evaluationCacheSize(int)}
+         *
+         * @param flagKeys the flag keys
+         * @return the builder
+         */
+        public Builder evaluationCacheFlagKeys(String... flagKeys) {
+            this.evaluationCacheFlagKeys = ImmutableList.copyOf(flagKeys);
+            return this;
+        }
+
+        /**
+         * Set the maximum number of segment memberships to cache; the cache is disabled by default.
+         * <p>
+         * A membership is reused as long as the segment is not updated and the user attributes read by the segment
+         * rules are the same. In any case, a user is checked only once against a segment when all the flags are evaluated,
+         * see {@link co.featureflags.server.exterior.FFCClient#getAllLatestFlagsVariations(co.featureflags.commons.model.FFCUser)}.
+         *
+         * @param segmentCacheSize maximum number of cached memberships, zero or a negative value disables the cache
+         * @return the builder
+         */
+        public Builder segmentCacheSize(int segmentCacheSize) {
+            this.segmentCacheSize = segmentCacheSize;
+            return this;
+        }
+
+        /**
+         * Set the pool on which the users are evaluated in parallel by the batch evaluation, and the flags by
+         * {@link co.featureflags.server.exterior.FFCClient#getAllLatestFlagsVariations(co.featureflags.commons.model.FFCUser)}
+         * in parallel mode; the default is {@link ForkJoinPool#commonPool()}. The SDK doesn't shut the pool down.
+         *
+         * @param evaluationPool a {@link ForkJoinPool}; null to use the default
+         * @return the builder
+         */
+        public Builder evaluationPool(ForkJoinPool evaluationPool) {
+            this.evaluationPool = evaluationPool;
+            return this;
+        }
+
+        /**
+         * Set the number of flags from which
+         * {@link co.featureflags.server.exterior.FFCClient#getAllLatestFlagsVariations(co.featureflags.commons.model.FFCUser)}
+         * evaluates the flags by chunks in parallel, on the pool set by {@link #evaluationPool(ForkJoinPool)};
+         * the parallel mode is disabled by default. The flags are returned in the same order in both modes.
+         *
+         * @param parallelEvaluationThreshold the minimum number of flags, zero or a negative value disables the parallel mode
+         * @return the builder
+         */
+        public Builder parallelEvaluationThreshold(int parallelEvaluationThreshold) {
+            this.parallelEvaluationThreshold = parallelEvaluationThreshold;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of objects deserialized by the json variations to cache; the cache is disabled by default.
+         * <p>
+         * An object is reused as long as the flag is not updated: the same instance is returned to all the callers and
+         * threads, so that it must be treated as immutable, unless a copier is set by {@link #jsonVariationCopier(UnaryOperator)}.
+         *
+         * @param jsonVariationCacheSize maximum number of cached objects, zero or a negative value disables the cache
+         * @return the builder
+         */
+        public Builder jsonVariationCacheSize(int jsonVariationCacheSize) {
+            this.jsonVariationCacheSize = jsonVariationCacheSize;
+            return this;
+        }
+
+        /**
+         * Set a function that returns a copy of a cached object deserialized by the json variations, it's applied each time
+         * the object is returned, so that the callers may modify their copy. By default, the cached object is returned.
+         *
+         * @param jsonVariationCopier a function copying an object; null to return the cached object
+         * @return the builder
+         */
+        public Builder jsonVariationCopier(UnaryOperator<Object> jsonVariationCopier) {
+            this.jsonVariationCopier = jsonVariationCopier;
+            return this;
+        }
+
         /**
          * Builds the configured {@link FFCConfig}
          *
@@ -1,8 +1,13 @@
 package co.featureflags.server;
 
+import com.google.common.collect.ImmutableMap;
 import org.apache.commons.codec.binary.Base64;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
 
 abstract class FeatureFlagKeyExtension {
     private FeatureFlagKeyExtension() {
@@ -22,6 +27,72 @@ abstract class FeatureFlagKeyExtension {
         return featureFlagId.split("__")[position];
     }
 
+    /**
+     * Resolves the flag ids of an environment by their key names, built from the flags in storage.
+     * <p>
+     * A resolver is immutable. It's built when the data are loaded, next to the prerequisite graph and the attribute
+     * slots; when a flag is updated, it's shared unless the flag is added or removed. An unknown key name is never
+     * stored and resolves to no id.
+     */
+    static final class FeatureFlagIdResolver {
+
+        static final FeatureFlagIdResolver EMPTY = new FeatureFlagIdResolver(ImmutableMap.of());
+
+        // key name -> flag id
+        private final Map<String, String> flagIds;
+
+        private FeatureFlagIdResolver(Map<String, String> flagIds) {
+            this.flagIds = flagIds;
+        }
+
+        /**
+         * @return the id of the flag, null if no flag in storage has this key name
+         */
+        String flagIdOf(String featureFlagKeyName) {
+            return featureFlagKeyName == null ? null : flagIds.get(featureFlagKeyName);
+        }
+
+        /**
+         * @return the resolver where an updated flag replaces the previous one, this one if its key name and id are the
+         * same
+         */
+        FeatureFlagIdResolver update(DataModel.TimestampData previous, DataModel.TimestampData current) {
+            String removed = keyNameOf(previous);
+            String added = keyNameOf(current);
+            if (Objects.equals(removed, added) && (added == null || current.getId().equals(flagIds.get(added)))) {
+                return this;
+            }
+            Map<String, String> newFlagIds = new HashMap<>(flagIds);
+            if (removed != null) {
+                newFlagIds.remove(removed);
+            }
+            if (added != null) {
+                newFlagIds.put(added, current.getId());
+            }
+            return new FeatureFlagIdResolver(ImmutableMap.copyOf(newFlagIds));
+        }
+
+        static FeatureFlagIdResolver build(Collection<DataModel.FeatureFlag> flags) {
+            Map<String, String> flagIds = new HashMap<>();
+            for (DataModel.FeatureFlag flag : flags) {
+                String keyName = keyNameOf(flag);
+                if (keyName != null) {
+                    flagIds.put(keyName, flag.getId());
+                }
+            }
+            return new FeatureFlagIdResolver(ImmutableMap.copyOf(flagIds));
+        }
+
+        // the key name of a flag in storage, null if it's not a flag or it's archived
+        private static String keyNameOf(DataModel.TimestampData data) {
+            if (!(data instanceof DataModel.FeatureFlag) || data.isArchived() || data.getId() == null) {
+                return null;
+            }
+            DataModel.FeatureFlagBasicInfo info = ((DataModel.FeatureFlag) data).getInfo();
+            return info != null && info.getKeyName() != null ? info.getKeyName() : unpackFeatureFlagId(data.getId(), 4);
+        }
+    }
+
     static final class FeatureFlagIdByEnvSecret {
         private final String featureFlagId;
         private final String envId;
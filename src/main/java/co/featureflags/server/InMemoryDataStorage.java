@@ -4,8 +4,13 @@ import co.featureflags.server.exterior.DataStorage;
 import co.featureflags.server.exterior.DataStoreTypes;
 import com.google.common.collect.ImmutableMap;
 
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
 
@@ -15,10 +20,17 @@ import java.util.stream.Collectors;
  */
 
 final class InMemoryDataStorage implements DataStorage {
+    // the maximum number of removed items whose change is tracked in each category
+    static final int MAX_REMOVED_KEYS = 1000;
+
     private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
     private volatile boolean initialized = false;
     private volatile Map<DataStoreTypes.Category, Map<String, DataStoreTypes.Item>> allData = ImmutableMap.of();
     private volatile long version = 0;
+    // category -> key -> the version of storage at which the item was last changed, including the last removed items
+    private final Map<DataStoreTypes.Category, Map<String, Long>> changes = new HashMap<>();
+    // the changes before this version are not all tracked, the removed items are forgotten beyond MAX_REMOVED_KEYS
+    private long retainedVersion = 0;
 
     InMemoryDataStorage() {
         super();
@@ -32,7 +44,9 @@ final class InMemoryDataStorage implements DataStorage {
 
         rwLock.writeLock().lock();
         try {
+            trackChanges(this.allData, allData, version);
             this.allData = ImmutableMap.copyOf(allData);
+            pruneRemovedKeys();
             initialized = true;
             this.version = version;
             Loggers.DATA_STORAGE.debug("Data storage initialized");
@@ -110,6 +124,7 @@ final class InMemoryDataStorage implements DataStorage {
                 newData.put(category, newItems.build());
             }
             allData = newData.build();
+            changes.computeIfAbsent(category, c -> new HashMap<>()).put(key, version);
             this.version = version;
             if (!initialized) initialized = true;
             Loggers.DATA_STORAGE.debug("upsert item {} into storage", key);
@@ -120,6 +135,63 @@ final class InMemoryDataStorage implements DataStorage {
 
     }
 
+    // a full data set often repeats the items already stored, only the ones whose timestamp changed are tracked
+    private void trackChanges(Map<DataStoreTypes.Category, Map<String, DataStoreTypes.Item>> oldData,
+                              Map<DataStoreTypes.Category, Map<String, DataStoreTypes.Item>> newData,
+                              long version) {
+        Set<DataStoreTypes.Category> categories = new HashSet<>(oldData.keySet());
+        categories.addAll(newData.keySet());
+        for (DataStoreTypes.Category category : categories) {
+            Map<String, DataStoreTypes.Item> oldItems = oldData.getOrDefault(category, ImmutableMap.of());
+            Map<String, DataStoreTypes.Item> newItems = newData.getOrDefault(category, ImmutableMap.of());
+            Map<String, Long> changed = changes.computeIfAbsent(category, c -> new HashMap<>());
+            for (Map.Entry<String, DataStoreTypes.Item> entry : newItems.entrySet()) {
+                DataStoreTypes.Item oldItem = oldItems.get(entry.getKey());
+                DataStoreTypes.Item newItem = entry.getValue();
+                if (oldItem == null
+                        || !Objects.equals(oldItem.item().getTimestamp(), newItem.item().getTimestamp())
+                        || oldItem.item().isArchived() != newItem.item().isArchived()) {
+                    changed.put(entry.getKey(), version);
+                }
+            }
+            for (String key : oldItems.keySet()) {
+                if (!newItems.containsKey(key)) {
+                    changed.put(key, version);
+                }
+            }
+        }
+    }
+
+    // the changes of the items removed a long time ago are dropped, the version of the last dropped one is retained
+    private void pruneRemovedKeys() {
+        for (Map.Entry<DataStoreTypes.Category, Map<String, Long>> entry : changes.entrySet()) {
+            Map<String, DataStoreTypes.Item> items = allData.getOrDefault(entry.getKey(), ImmutableMap.of());
+            Map<String, Long> changed = entry.getValue();
+            List<Map.Entry<String, Long>> removed = changed.entrySet().stream()
+                    .filter(change -> !items.containsKey(change.getKey()))
+                    .sorted(Map.Entry.comparingByValue(Comparator.reverseOrder()))
+                    .collect(Collectors.toList());
+            for (Map.Entry<String, Long> change : removed.subList(Math.min(removed.size(), MAX_REMOVED_KEYS), removed.size())) {
+                retainedVersion = Math.max(retainedVersion, change.getValue());
+                changed.remove(change.getKey());
+            }
+        }
+    }
+
+    @Override
+    public Set<String> getChangedKeys(DataStoreTypes.Category category, long sinceVersion) {
+        rwLock.readLock().lock();
+        try {
+            if (!initialized || sinceVersion > version || sinceVersion < retainedVersion) {
+                return null;
+            }
+            Map<String, Long> changed = changes.getOrDefault(category, ImmutableMap.of());
+            return changed.entrySet().stream().filter(entry -> entry.getValue() > sinceVersion).map(Map.Entry::getKey).collect(Collectors.toSet());
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
     @Override
     public boolean isInitialized() {
         rwLock.readLock().lock();
@@ -36,6 +36,19 @@ public abstract class InsightTypes {
         public abstract boolean isSendEvent();
 
         public abstract Event add(Object element);
+
+        /**
+         * @return the number of elements added to the event
+         */
+        int size() {
+            return 0;
+        }
+
+        /**
+         * removes the elements added after the given size
+         */
+        void truncate(int size) {
+        }
     }
 
     final static class NullEvent extends Event {
@@ -80,6 +93,55 @@ public abstract class InsightTypes {
         public boolean isSendEvent() {
             return user != null && !userVariations.isEmpty();
         }
+
+        @Override
+        int size() {
+            return userVariations.size();
+        }
+
+        @Override
+        void truncate(int size) {
+            userVariations.subList(size, userVariations.size()).clear();
+        }
+
+        List<FlagEventVariation> getUserVariations() {
+            return userVariations;
+        }
+    }
+
+    /**
+     * The flag events of several users, delivered to the insight processor in one call. The events are not aggregated:
+     * the processor buffers and sends each of them as if it was sent alone.
+     */
+    final static class BatchEvent extends Event {
+        private final List<Event> events;
+
+        private BatchEvent(int size) {
+            super(null);
+            this.events = new ArrayList<>(size);
+        }
+
+        static BatchEvent of(int size) {
+            return new BatchEvent(size);
+        }
+
+        @Override
+        public Event add(Object element) {
+            Event event = (Event) element;
+            if (event != null && event.isSendEvent()) {
+                events.add(event);
+            }
+            return this;
+        }
+
+        @Override
+        public boolean isSendEvent() {
+            return !events.isEmpty();
+        }
+
+        List<Event> getEvents() {
+            return events;
+        }
     }
 
     @JsonAdapter(MetricEventSerializer.class)
@@ -121,7 +183,7 @@ public abstract class InsightTypes {
         }
 
         static FlagEventVariation of(String featureFlagKeyName, Evaluator.EvalResult variation) {
-            return new FlagEventVariation(featureFlagKeyName, Instant.now().toEpochMilli(), variation);
+            return new FlagEventVariation(featureFlagKeyName, System.currentTimeMillis(), variation);
         }
 
         public String getFeatureFlagKeyName() {
@@ -41,7 +41,7 @@ abstract class Insights {
         @Override
         public void send(InsightTypes.Event event) {
             if (!closed.get() && event != null) {
-                if (event instanceof InsightTypes.FlagEvent) {
+                if (event instanceof InsightTypes.FlagEvent || event instanceof InsightTypes.BatchEvent) {
                     putEventAsync(InsightTypes.InsightMessageType.FLAGS, event);
                 } else if (event instanceof InsightTypes.MetricEvent) {
                     putEventAsync(InsightTypes.InsightMessageType.METRICS, event);
@@ -282,7 +282,11 @@ abstract class Insights {
             if (closed.get()) {
                 return;
             }
-            if (event.isSendEvent()) {
+            if (event instanceof InsightTypes.BatchEvent) {
+                for (InsightTypes.Event e : ((InsightTypes.BatchEvent) event).getEvents()) {
+                    putEventToNextBuffer(e);
+                }
+            } else if (event.isSendEvent()) {
                 Loggers.EVENTS.debug("put event to buffer");
                 eventBuffer.add(event);
             }
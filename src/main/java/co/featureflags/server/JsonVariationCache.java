@@ -0,0 +1,84 @@
+package co.featureflags.server;
+
+import co.featureflags.commons.json.JsonHelper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.Objects;
+import java.util.function.UnaryOperator;
+
+/**
+ * An opt-in cache of the objects deserialized from the json variations.
+ * <p>
+ * An object is keyed by the flag id and timestamp, the variation id and the class of the object. When a flag is
+ * updated, the objects of its previous version are never hit again, they are evicted by the size bound.
+ * <p>
+ * A cached object is returned to all the callers, it must not be modified unless a copier is set,
+ * see {@link FFCConfig.Builder#jsonVariationCopier(UnaryOperator)}.
+ */
+final class JsonVariationCache {
+
+    private final Cache<Key, Object> cache;
+    private final UnaryOperator<Object> copier;
+
+    JsonVariationCache(int size, UnaryOperator<Object> copier) {
+        this.cache = size <= 0 ? null : CacheBuilder.newBuilder().maximumSize(size).recordStats().build();
+        this.copier = copier == null ? UnaryOperator.identity() : copier;
+    }
+
+    /**
+     * @throws co.featureflags.commons.json.JsonParseException if the variation is not a valid json of the class
+     */
+    <T> T deserialize(Evaluator.EvalResult result, Class<T> clazz) {
+        String flagId = result.getFlagId();
+        if (cache == null || flagId == null) {
+            return JsonHelper.deserialize(result.getValue(), clazz);
+        }
+        Key key = new Key(flagId, result.getFlagTimestamp(), result.getIndex(), clazz);
+        Object value = cache.getIfPresent(key);
+        if (value == null) {
+            value = JsonHelper.deserialize(result.getValue(), clazz);
+            if (value == null) {
+                return null;
+            }
+            cache.put(key, value);
+        }
+        return clazz.cast(copier.apply(value));
+    }
+
+    Statistics.CacheStatistics statistics() {
+        return Statistics.CacheStatistics.of(cache);
+    }
+
+    static final class Key {
+        private final String flagId;
+        private final Long timestamp;
+        private final Integer variationId;
+        private final Class<?> clazz;
+        private final int hash;
+
+        private Key(String flagId, Long timestamp, Integer variationId, Class<?> clazz) {
+            this.flagId = flagId;
+            this.timestamp = timestamp;
+            this.variationId = variationId;
+            this.clazz = clazz;
+            this.hash = Objects.hash(flagId, timestamp, variationId, clazz);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return Objects.equals(flagId, key.flagId)
+                    && Objects.equals(timestamp, key.timestamp)
+                    && Objects.equals(variationId, key.variationId)
+                    && clazz == key.clazz;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
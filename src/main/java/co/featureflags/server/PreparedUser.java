@@ -0,0 +1,146 @@
+package co.featureflags.server;
+
+import co.featureflags.commons.model.FFCUser;
+
+/**
+ * A view of a user for the clauses, the attributes read by the clauses are resolved once and their derived forms,
+ * like numbers, are computed once.
+ * <p>
+ * Each attribute name referred by the clauses of a client is given a dense slot by the {@link AttributeSlots} built
+ * when the data are loaded, so that the attributes of a prepared user are stored by index and a clause finds its slot
+ * by its id. A clause unknown to the table the user was prepared with, e.g. of a flag loaded meanwhile, reads its
+ * attribute from the user each time.
+ * A prepared user is reused by the evaluations of a same user: an evaluation context has its own, the other evaluations
+ * reuse one per thread.
+ * <p>
+ * A prepared user is not thread-safe.
+ */
+final class PreparedUser {
+
+    private static final ThreadLocal<PreparedUser> LOCAL = ThreadLocal.withInitial(PreparedUser::new);
+
+    private static final byte NOT_BOOLEAN = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+
+    private FFCUser user;
+    private AttributeSlots slots = AttributeSlots.EMPTY;
+    // a value is valid if its stamp is the current generation, so that the reset is done in constant time
+    private int generation = 1;
+    private String[] values;
+    private int[] valueStamps;
+    private double[] numbers;
+    private int[] numberStamps;
+    private byte[] booleans;
+    private int[] booleanStamps;
+
+    private PreparedUser() {
+        allocate(0);
+    }
+
+    PreparedUser(FFCUser user, AttributeSlots slots) {
+        this.user = user;
+        this.slots = slots;
+        allocate(slots.count);
+    }
+
+    /**
+     * @return the prepared user of the current thread, reset for a user and the slots of the current data
+     */
+    static PreparedUser local(FFCUser user, AttributeSlots slots) {
+        PreparedUser prepared = LOCAL.get();
+        if (prepared.slots != slots) {
+            prepared.slots = slots;
+            if (prepared.values.length < slots.count) {
+                prepared.allocate(slots.count);
+            }
+        }
+        return prepared.reset(user);
+    }
+
+    PreparedUser reset(FFCUser user) {
+        this.user = user;
+        if (++generation == 0) {
+            // the stamps wrapped around, they are cleared
+            allocate(values.length);
+            generation = 1;
+        }
+        return this;
+    }
+
+    FFCUser getUser() {
+        return user;
+    }
+
+    String getKey() {
+        return user.getKey();
+    }
+
+    String property(EvaluationPlan.Clause clause) {
+        return property(clause, slots.slotOf(clause));
+    }
+
+    private String property(EvaluationPlan.Clause clause, int slot) {
+        if (slot < 0) {
+            return clause.attribute == null ? null : user.getProperty(clause.attribute);
+        }
+        if (valueStamps[slot] != generation) {
+            values[slot] = user.getProperty(clause.attribute);
+            valueStamps[slot] = generation;
+        }
+        return values[slot];
+    }
+
+    /**
+     * @return the attribute as a number, NaN if it's not a number
+     */
+    double number(EvaluationPlan.Clause clause) {
+        int slot = slots.slotOf(clause);
+        String pv = property(clause, slot);
+        if (slot < 0) {
+            return Utils.parseNumber(pv);
+        }
+        if (numberStamps[slot] != generation) {
+            numbers[slot] = Utils.parseNumber(pv);
+            numberStamps[slot] = generation;
+        }
+        return numbers[slot];
+    }
+
+    boolean isTrue(EvaluationPlan.Clause clause) {
+        return booleanOf(clause) == TRUE;
+    }
+
+    boolean isFalse(EvaluationPlan.Clause clause) {
+        return booleanOf(clause) == FALSE;
+    }
+
+    private byte booleanOf(EvaluationPlan.Clause clause) {
+        int slot = slots.slotOf(clause);
+        String pv = property(clause, slot);
+        if (slot < 0) {
+            return parseBoolean(pv);
+        }
+        if (booleanStamps[slot] != generation) {
+            booleans[slot] = parseBoolean(pv);
+            booleanStamps[slot] = generation;
+        }
+        return booleans[slot];
+    }
+
+    private static byte parseBoolean(String pv) {
+        if (pv == null) {
+            return NOT_BOOLEAN;
+        }
+        return pv.equalsIgnoreCase("true") ? TRUE : pv.equalsIgnoreCase("false") ? FALSE : NOT_BOOLEAN;
+    }
+
+    private void allocate(int size) {
+        values = new String[size];
+        valueStamps = new int[size];
+        numbers = new double[size];
+        numberStamps = new int[size];
+        booleans = new byte[size];
+        booleanStamps = new int[size];
+    }
+}
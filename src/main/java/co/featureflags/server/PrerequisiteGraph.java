@@ -0,0 +1,194 @@
+package co.featureflags.server;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Dependency graph of the feature flags through their prerequisites, built for a version of the data storage.
+ * <p>
+ * The flags are sorted in a topological order, prerequisites first; flags that depend on each other are detected
+ * when the graph is built, such a prerequisite always fails instead of recursing infinitely.
+ * <p>
+ * A graph is immutable. When a flag is updated, the graph is sorted again only if the prerequisites of the flag
+ * changed, i.e. a flag is added or removed or its prerequisites are edited.
+ */
+final class PrerequisiteGraph {
+
+    static final PrerequisiteGraph EMPTY = new PrerequisiteGraph(-1L, ImmutableList.of(), ImmutableMap.of(), Collections.emptyMap());
+
+    final long version;
+    // flag ids, a flag always comes after its prerequisites, except the ones in a cycle
+    final List<String> order;
+    // flag id -> index of the strongly connected component, only for the flags in a cycle
+    private final Map<String, Integer> cycles;
+    // flag id -> ids of its prerequisites, sorted by flag id; never modified
+    private final Map<String, String[]> edges;
+
+    private PrerequisiteGraph(long version, List<String> order, Map<String, Integer> cycles, Map<String, String[]> edges) {
+        this.version = version;
+        this.order = order;
+        this.cycles = cycles;
+        this.edges = edges;
+    }
+
+    /**
+     * @return true if the flag and its prerequisite depend on each other
+     */
+    boolean isCircular(String flagId, String prerequisiteFlagId) {
+        Integer component = cycles.get(flagId);
+        return component != null && component.equals(cycles.get(prerequisiteFlagId));
+    }
+
+    boolean hasCycles() {
+        return !cycles.isEmpty();
+    }
+
+    /**
+     * @return the graph where a flag replaces the previous one of the same id, or is removed if it's archived; the same
+     * order is kept if its prerequisites didn't change
+     */
+    PrerequisiteGraph update(DataModel.TimestampData flag, long version) {
+        if (flag == null || flag.getId() == null) {
+            return this;
+        }
+        String[] prerequisites = flag instanceof DataModel.FeatureFlag && !flag.isArchived()
+                ? prerequisitesOf((DataModel.FeatureFlag) flag) : null;
+        if (Arrays.equals(edges.get(flag.getId()), prerequisites)) {
+            return new PrerequisiteGraph(version, order, cycles, edges);
+        }
+        Map<String, String[]> updated = new TreeMap<>(edges);
+        if (prerequisites == null) {
+            updated.remove(flag.getId());
+        } else {
+            updated.put(flag.getId(), prerequisites);
+        }
+        return new Tarjan(updated).run(version);
+    }
+
+    static PrerequisiteGraph build(Collection<DataModel.FeatureFlag> flags, long version) {
+        // sorted by id, so that the order is the same for the same flags
+        Map<String, String[]> edges = new TreeMap<>();
+        for (DataModel.FeatureFlag flag : flags) {
+            if (flag == null || flag.getId() == null || flag.isArchived()) {
+                continue;
+            }
+            edges.put(flag.getId(), prerequisitesOf(flag));
+        }
+        return new Tarjan(edges).run(version);
+    }
+
+    private static String[] prerequisitesOf(DataModel.FeatureFlag flag) {
+        DataModel.FeatureFlagPrerequisite[] prerequisites = flag.plan().prerequisites;
+        List<String> ids = new ArrayList<>(prerequisites.length);
+        for (DataModel.FeatureFlagPrerequisite prerequisite : prerequisites) {
+            String id = prerequisite.getPrerequisiteFeatureFlagId();
+            // a flag being its own prerequisite is ignored in the evaluation
+            if (id != null && !id.equals(flag.getId())) {
+                ids.add(id);
+            }
+        }
+        return ids.toArray(new String[0]);
+    }
+
+    // iterative Tarjan's algorithm: the components are found in reverse topological order, i.e. prerequisites first
+    private static final class Tarjan {
+        private final Map<String, String[]> edges;
+        private final Map<String, Integer> index = new HashMap<>();
+        private final Map<String, Integer> lowLink = new HashMap<>();
+        private final Deque<String> stack = new ArrayDeque<>();
+        private final Map<String, Boolean> onStack = new HashMap<>();
+        private final ImmutableList.Builder<String> order = ImmutableList.builder();
+        private final ImmutableMap.Builder<String, Integer> cycles = ImmutableMap.builder();
+        private int counter = 0;
+        private int components = 0;
+
+        Tarjan(Map<String, String[]> edges) {
+            this.edges = edges;
+        }
+
+        PrerequisiteGraph run(long version) {
+            for (String id : edges.keySet()) {
+                if (!index.containsKey(id)) {
+                    visit(id);
+                }
+            }
+            ImmutableMap<String, Integer> circular = cycles.build();
+            if (!circular.isEmpty()) {
+                Loggers.EVALUATION.warn("FFC JAVA SDK: circular prerequisites between flags {}, they will fail", circular.keySet());
+            }
+            return new PrerequisiteGraph(version, order.build(), circular, edges);
+        }
+
+        private void visit(String root) {
+            // each frame is a flag and the position of the next prerequisite to visit
+            Deque<Object[]> frames = new ArrayDeque<>();
+            open(root);
+            frames.push(new Object[]{root, 0});
+            while (!frames.isEmpty()) {
+                Object[] frame = frames.peek();
+                String id = (String) frame[0];
+                int next = (Integer) frame[1];
+                String[] prerequisites = edges.get(id);
+                if (next < prerequisites.length) {
+                    frame[1] = next + 1;
+                    String prerequisite = prerequisites[next];
+                    if (!edges.containsKey(prerequisite)) {
+                        // unknown flags are not part of the graph
+                        continue;
+                    }
+                    if (!index.containsKey(prerequisite)) {
+                        open(prerequisite);
+                        frames.push(new Object[]{prerequisite, 0});
+                    } else if (onStack.getOrDefault(prerequisite, false)) {
+                        lowLink.put(id, Math.min(lowLink.get(id), index.get(prerequisite)));
+                    }
+                    continue;
+                }
+                frames.pop();
+                if (!frames.isEmpty()) {
+                    String parent = (String) frames.peek()[0];
+                    lowLink.put(parent, Math.min(lowLink.get(parent), lowLink.get(id)));
+                }
+                if (lowLink.get(id).equals(index.get(id))) {
+                    close(id);
+                }
+            }
+        }
+
+        private void open(String id) {
+            index.put(id, counter);
+            lowLink.put(id, counter);
+            counter++;
+            stack.push(id);
+            onStack.put(id, true);
+        }
+
+        private void close(String root) {
+            List<String> component = new ArrayList<>();
+            String id;
+            do {
+                id = stack.pop();
+                onStack.put(id, false);
+                component.add(id);
+            } while (!id.equals(root));
+            order.addAll(component);
+            if (component.size() > 1) {
+                for (String member : component) {
+                    cycles.put(member, components);
+                }
+            }
+            components++;
+        }
+    }
+}
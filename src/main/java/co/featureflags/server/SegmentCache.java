@@ -0,0 +1,81 @@
+package co.featureflags.server;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * An opt-in cache of the segment membership of the users, shared by all the evaluations.
+ * <p>
+ * A membership is keyed by the segment id and timestamp, the user key and the values of the user attributes read by
+ * the segment rules. When a segment is updated, the entries of its previous version are never hit again, they are
+ * evicted by the size bound.
+ * A segment whose rules refer to other segments is never cached.
+ */
+final class SegmentCache {
+
+    private final Cache<Key, Boolean> cache;
+
+    SegmentCache(int size) {
+        this.cache = size <= 0 ? null : CacheBuilder.newBuilder().maximumSize(size).recordStats().build();
+    }
+
+    boolean isMatch(EvaluationPlan.Segment segment, PreparedUser user, EvaluationPlan.SegmentMatcher segments) {
+        if (cache == null || segment.properties == null) {
+            return segment.isMatch(user, segments);
+        }
+        Key key = keyOf(segment, user);
+        Boolean match = cache.getIfPresent(key);
+        if (match == null) {
+            match = segment.isMatch(user, segments);
+            cache.put(key, match);
+        }
+        return match;
+    }
+
+    private static Key keyOf(EvaluationPlan.Segment segment, PreparedUser user) {
+        String[] names = segment.properties;
+        String[] values = new String[names.length + 1];
+        values[0] = user.getKey();
+        for (int i = 0; i < names.length; i++) {
+            values[i + 1] = user.getUser().getProperty(names[i]);
+        }
+        return new Key(segment.id, segment.timestamp, values);
+    }
+
+    Statistics.CacheStatistics statistics() {
+        return Statistics.CacheStatistics.of(cache);
+    }
+
+    static final class Key {
+        private final String segmentId;
+        private final Long timestamp;
+        // the user key, followed by the attributes read by the segment
+        private final String[] values;
+        private final int hash;
+
+        private Key(String segmentId, Long timestamp, String[] values) {
+            this.segmentId = segmentId;
+            this.timestamp = timestamp;
+            this.values = values;
+            this.hash = Objects.hash(segmentId, timestamp, Arrays.hashCode(values));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return Objects.equals(segmentId, key.segmentId)
+                    && Objects.equals(timestamp, key.timestamp)
+                    && Arrays.equals(values, key.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
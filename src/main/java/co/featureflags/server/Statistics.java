@@ -0,0 +1,221 @@
+package co.featureflags.server;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheStats;
+
+import java.io.Serializable;
+
+/**
+ * Runtime statistics of the evaluation, see {@link co.featureflags.server.exterior.FFCClient#getStatisticsProvider()}
+ */
+public abstract class Statistics {
+
+    private Statistics() {
+        super();
+    }
+
+    /**
+     * An interface to query the statistics of the caches and facilities used in the evaluation.
+     * <p>
+     * All the values are cumulative since the client was created.
+     */
+    public interface StatisticsProvider {
+        /**
+         * Returns the statistics of the cache of user bucketing percentages, see {@link FFCConfig.Builder#bucketCacheSize(int)}
+         *
+         * @return a {@link CacheStatistics}
+         */
+        CacheStatistics getBucketCacheStatistics();
+
+        /**
+         * Returns the counters of the logs written in the evaluation, see {@link FFCConfig.Builder#decisionLogSamplingRate(double)}
+         * and {@link FFCConfig.Builder#decisionLogInterval(java.time.Duration)}
+         *
+         * @return a {@link DecisionLogStatistics}
+         */
+        DecisionLogStatistics getDecisionLogStatistics();
+
+        /**
+         * Returns the statistics of the cache of evaluation results, see {@link FFCConfig.Builder#evaluationCacheSize(int)}
+         *
+         * @return a {@link CacheStatistics}
+         */
+        CacheStatistics getEvaluationCacheStatistics();
+
+        /**
+         * Returns the statistics of the cache of segment memberships, see {@link FFCConfig.Builder#segmentCacheSize(int)}
+         *
+         * @return a {@link CacheStatistics}
+         */
+        CacheStatistics getSegmentCacheStatistics();
+
+        /**
+         * Returns the statistics of the cache of objects deserialized by the json variations,
+         * see {@link FFCConfig.Builder#jsonVariationCacheSize(int)}
+         *
+         * @return a {@link CacheStatistics}
+         */
+        CacheStatistics getJsonVariationCacheStatistics();
+    }
+
+    /**
+     * A snapshot of the statistics of a cache
+     */
+    public static final class CacheStatistics implements Serializable {
+        static final CacheStatistics EMPTY = new CacheStatistics(0L, 0L, 0L, 0L);
+
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final long size;
+
+        private CacheStatistics(long hitCount, long missCount, long evictionCount, long size) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.size = size;
+        }
+
+        static CacheStatistics of(long hitCount, long missCount, long evictionCount, long size) {
+            return new CacheStatistics(hitCount, missCount, evictionCount, size);
+        }
+
+        static CacheStatistics of(Cache<?, ?> cache) {
+            if (cache == null) {
+                return EMPTY;
+            }
+            CacheStats stats = cache.stats();
+            return new CacheStatistics(stats.hitCount(), stats.missCount(), stats.evictionCount(), cache.size());
+        }
+
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        /**
+         * @return the approximate number of entries in the cache
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return the ratio of requests which were hits, 1.0 if no request
+         */
+        public double getHitRate() {
+            long requestCount = hitCount + missCount;
+            return requestCount == 0L ? 1.0D : (double) hitCount / requestCount;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("hitCount", hitCount)
+                    .add("missCount", missCount)
+                    .add("evictionCount", evictionCount)
+                    .add("size", size)
+                    .toString();
+        }
+    }
+
+    /**
+     * A snapshot of the counters of the logs written in the evaluation
+     */
+    public static final class DecisionLogStatistics implements Serializable {
+        private final long loggedCount;
+        private final long sampledOutCount;
+        private final long rateLimitedCount;
+
+        private DecisionLogStatistics(long loggedCount, long sampledOutCount, long rateLimitedCount) {
+            this.loggedCount = loggedCount;
+            this.sampledOutCount = sampledOutCount;
+            this.rateLimitedCount = rateLimitedCount;
+        }
+
+        static DecisionLogStatistics of(long loggedCount, long sampledOutCount, long rateLimitedCount) {
+            return new DecisionLogStatistics(loggedCount, sampledOutCount, rateLimitedCount);
+        }
+
+        public long getLoggedCount() {
+            return loggedCount;
+        }
+
+        public long getSampledOutCount() {
+            return sampledOutCount;
+        }
+
+        public long getRateLimitedCount() {
+            return rateLimitedCount;
+        }
+
+        /**
+         * @return the number of occurrences not logged, either sampled out or rate limited
+         */
+        public long getSuppressedCount() {
+            return sampledOutCount + rateLimitedCount;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("loggedCount", loggedCount)
+                    .add("sampledOutCount", sampledOutCount)
+                    .add("rateLimitedCount", rateLimitedCount)
+                    .toString();
+        }
+    }
+
+    static final class StatisticsProviderImpl implements StatisticsProvider {
+        private final BucketCache bucketCache;
+        private final DecisionLogger decisionLogger;
+        private final EvalResultCache evalResultCache;
+        private final SegmentCache segmentCache;
+        private final JsonVariationCache jsonVariationCache;
+
+        StatisticsProviderImpl(BucketCache bucketCache,
+                               DecisionLogger decisionLogger,
+                               EvalResultCache evalResultCache,
+                               SegmentCache segmentCache,
+                               JsonVariationCache jsonVariationCache) {
+            this.bucketCache = bucketCache;
+            this.decisionLogger = decisionLogger;
+            this.evalResultCache = evalResultCache;
+            this.segmentCache = segmentCache;
+            this.jsonVariationCache = jsonVariationCache;
+        }
+
+        @Override
+        public CacheStatistics getBucketCacheStatistics() {
+            return bucketCache.statistics();
+        }
+
+        @Override
+        public DecisionLogStatistics getDecisionLogStatistics() {
+            return decisionLogger.statistics();
+        }
+
+        @Override
+        public CacheStatistics getEvaluationCacheStatistics() {
+            return evalResultCache.statistics();
+        }
+
+        @Override
+        public CacheStatistics getSegmentCacheStatistics() {
+            return segmentCache.statistics();
+        }
+
+        @Override
+        public CacheStatistics getJsonVariationCacheStatistics() {
+            return jsonVariationCache.statistics();
+        }
+    }
+}
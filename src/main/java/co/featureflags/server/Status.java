@@ -243,6 +243,25 @@ public abstract class Status {
 
     }
 
+    /**
+     * Notified by {@link DataUpdatorImpl} in the update thread, after the flags or segments are updated in the storage
+     */
+    interface FlagsUpdatedListener {
+        /**
+         * the storage is initialized with a full data set
+         */
+        void initialized();
+
+        /**
+         * a flag or a segment is upserted in the storage
+         *
+         * @param category FEATURES or SEGMENTS
+         * @param previous the previous item of the same key, null if there was none or it was archived
+         * @param item     the upserted item
+         */
+        void upserted(DataStoreTypes.Category category, DataStoreTypes.Item previous, DataStoreTypes.Item item);
+    }
+
     /**
      * The {@link co.featureflags.server.exterior.UpdateProcessor} will push updates into this component. This component
      * then apply necessary transformations, like status management(checking, updating, notifying etc.), failure tracking,
@@ -253,15 +272,37 @@ public abstract class Status {
     static final class DataUpdatorImpl implements DataUpdator {
 
         private final DataStorage storage;
+        private final FlagsUpdatedListener flagsUpdatedListener;
         private volatile State currentState;
         private final Object lockObject = new Object();
         // todo FlagChangeNotifier, StatusNotifier, ErrorAnalyser
 
         public DataUpdatorImpl(DataStorage storage) {
+            this(storage, new FlagsUpdatedListener() {
+                @Override
+                public void initialized() {
+                }
+
+                @Override
+                public void upserted(DataStoreTypes.Category category, DataStoreTypes.Item previous, DataStoreTypes.Item item) {
+                }
+            });
+        }
+
+        DataUpdatorImpl(DataStorage storage, FlagsUpdatedListener flagsUpdatedListener) {
             this.storage = storage;
+            this.flagsUpdatedListener = flagsUpdatedListener;
             this.currentState = State.initializingState();
         }
 
+        private void notifyFlagsUpdated(Runnable notification) {
+            try {
+                notification.run();
+            } catch (Exception ex) {
+                Loggers.DATA_STORAGE.error("FFC JAVA SDK: unexpected error after the update of the flags", ex);
+            }
+        }
+
         private void handleErrorFromStorage(Exception ex, ErrorInfo errorInfo) {
             Loggers.DATA_STORAGE.error("FFC JAVA SDK: Data Storage error: {}, UpdateProcessor will attempt to receive the data", ex.getMessage());
             updateStatus(StateType.INTERRUPTED, errorInfo);
@@ -275,18 +316,25 @@ public abstract class Status {
                 handleErrorFromStorage(ex, ErrorInfo.of(DATA_STORAGE_INIT_ERROR, ex.getMessage()));
                 return false;
             }
+            notifyFlagsUpdated(flagsUpdatedListener::initialized);
             //TODO Flag Change Notifying->new thread
             return true;
         }
 
         @Override
         public boolean upsert(DataStoreTypes.Category category, String key, DataStoreTypes.Item item, Long version) {
+            boolean flagsUpdated = category == DataStoreTypes.FEATURES || category == DataStoreTypes.SEGMENTS;
+            DataStoreTypes.Item previous;
             try {
-                storage.upsert(category, key, item, version);
+                previous = flagsUpdated ? storage.get(category, key) : null;
+                flagsUpdated = storage.upsert(category, key, item, version) && flagsUpdated;
             } catch (Exception ex) {
                 handleErrorFromStorage(ex, ErrorInfo.of(DATA_STORAGE_UPDATE_ERROR, ex.getMessage()));
                 return false;
             }
+            if (flagsUpdated) {
+                notifyFlagsUpdated(() -> flagsUpdatedListener.upserted(category, previous, item));
+            }
             //TODO Flag Change Notifying->new thread
             return true;
         }
@@ -0,0 +1,36 @@
+package co.featureflags.server;
+
+import co.featureflags.commons.model.FFCUser;
+import co.featureflags.commons.model.FlagState;
+
+/**
+ * The variation of a flag for a given user, returned by the batch evaluation,
+ * see {@link co.featureflags.server.exterior.FFCClient#batchVariation(String, java.util.stream.Stream, String, boolean)}
+ */
+public final class UserVariation {
+    private final FFCUser user;
+    private final FlagState<String> flagState;
+
+    private UserVariation(FFCUser user, FlagState<String> flagState) {
+        this.user = user;
+        this.flagState = flagState;
+    }
+
+    static UserVariation of(FFCUser user, FlagState<String> flagState) {
+        return new UserVariation(user, flagState);
+    }
+
+    /**
+     * @return the user, as given to the batch evaluation
+     */
+    public FFCUser getUser() {
+        return user;
+    }
+
+    /**
+     * @return the flag value with details, including the reason that describes the way the value was determined
+     */
+    public FlagState<String> getFlagState() {
+        return flagState;
+    }
+}
@@ -151,6 +151,73 @@ public abstract class Utils {
         Loggers.UTILS.debug("gracefully shut down thread pool of {}", name);
     }
 
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    /**
+     * parse a plain decimal number like -12, +3.5 or .25 without allocation
+     *
+     * @param value a string
+     * @return the double value, or {@link Double#NaN} if the string is not a plain decimal number
+     */
+    static double parseNumber(String value) {
+        if (value == null) {
+            return Double.NaN;
+        }
+        int len = value.length();
+        int i = 0;
+        boolean negative = false;
+        if (len > 0 && (value.charAt(0) == '-' || value.charAt(0) == '+')) {
+            negative = value.charAt(0) == '-';
+            i++;
+        }
+        long mantissa = 0L;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean dot = false;
+        for (; i < len; i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (mantissa >= (1L << 53) / 10) {
+                    // can't be exactly computed in a double, rare case
+                    return slowParseNumber(value);
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (dot) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else {
+                return Double.NaN;
+            }
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+        if (fractionDigits >= POWERS_OF_TEN.length) {
+            return slowParseNumber(value);
+        }
+        // both are exactly represented, so the division is correctly rounded
+        double res = fractionDigits == 0 ? mantissa : mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -res : res;
+    }
+
+    private static double slowParseNumber(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (!(c >= '0' && c <= '9') && c != '.' && !(i == 0 && (c == '-' || c == '+'))) {
+                return Double.NaN;
+            }
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
     public static int intLEFromBytes(byte[] bytes) {
         return bytes[3] << 24 | (bytes[2] & 255) << 16 | (bytes[1] & 255) << 8 | bytes[0] & 255;
     }
@@ -1,35 +1,143 @@
 package co.featureflags.server;
 
-import com.google.common.primitives.Ints;
-
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
-import java.util.List;
 
+/**
+ * The percentage of a key is the first 4 bytes (little-endian) of MD5(key in US-ASCII) divided by {@link Integer#MIN_VALUE}.
+ * <p>
+ * MD5 of ASCII keys is computed by a specialized implementation that neither looks up a security provider nor allocates;
+ * other keys fall back to a per-thread {@link MessageDigest}. Both are bit-for-bit compatible.
+ */
 final class VariationSplittingAlgorithm {
-    static boolean ifKeyBelongsPercentage(String key, List<Double> percentageRange) {
+
+    private static final int[] SHIFTS = {
+            7, 12, 17, 22, 7, 12, 17, 22, 7, 12, 17, 22, 7, 12, 17, 22,
+            5, 9, 14, 20, 5, 9, 14, 20, 5, 9, 14, 20, 5, 9, 14, 20,
+            4, 11, 16, 23, 4, 11, 16, 23, 4, 11, 16, 23, 4, 11, 16, 23,
+            6, 10, 15, 21, 6, 10, 15, 21, 6, 10, 15, 21, 6, 10, 15, 21};
+
+    private static final int[] CONSTANTS = {
+            0xd76aa478, 0xe8c7b756, 0x242070db, 0xc1bdceee,
+            0xf57c0faf, 0x4787c62a, 0xa8304613, 0xfd469501,
+            0x698098d8, 0x8b44f7af, 0xffff5bb1, 0x895cd7be,
+            0x6b901122, 0xfd987193, 0xa679438e, 0x49b40821,
+            0xf61e2562, 0xc040b340, 0x265e5a51, 0xe9b6c7aa,
+            0xd62f105d, 0x02441453, 0xd8a1e681, 0xe7d3fbc8,
+            0x21e1cde6, 0xc33707d6, 0xf4d50d87, 0x455a14ed,
+            0xa9e3e905, 0xfcefa3f8, 0x676f02d9, 0x8d2a4c8a,
+            0xfffa3942, 0x8771f681, 0x6d9d6122, 0xfde5380c,
+            0xa4beea44, 0x4bdecfa9, 0xf6bb4b60, 0xbebfbc70,
+            0x289b7ec6, 0xeaa127fa, 0xd4ef3085, 0x04881d05,
+            0xd9d4d039, 0xe6db99e5, 0x1fa27cf8, 0xc4ac5665,
+            0xf4292244, 0x432aff97, 0xab9423a7, 0xfc93a039,
+            0x655b59c3, 0x8f0ccc92, 0xffeff47d, 0x85845dd1,
+            0x6fa87e4f, 0xfe2ce6e0, 0xa3014314, 0x4e0811a1,
+            0xf7537e82, 0xbd3af235, 0x2ad7d2bb, 0xeb86d391};
+
+    private static final ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(() -> {
         try {
-            double min = percentageRange.get(0);
-            double max = percentageRange.get(1);
-            if (min == 0D && max == 1D)
-                return true;
-            double percentage = percentageOfKey(key);
-            return percentage >= min && percentage < max;
+            return MessageDigest.getInstance("MD5");
         } catch (Exception ex) {
-            return false;
+            return null;
         }
+    });
 
+    private VariationSplittingAlgorithm() {
+        super();
     }
 
     static double percentageOfKey(String key) {
         try {
-            MessageDigest md5 = MessageDigest.getInstance("MD5");
-            md5.update(key.getBytes(StandardCharsets.US_ASCII));
-            byte[] digest = md5.digest();
-            int magicNumber = Utils.intLEFromBytes(digest);
+            int magicNumber = isAscii(key) ? md5FirstIntLE(key) : slowMd5FirstIntLE(key);
             return Math.abs((double) magicNumber / Integer.MIN_VALUE);
         } catch (Exception ex) {
             return 0D;
         }
     }
+
+    private static boolean isAscii(String key) {
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int slowMd5FirstIntLE(String key) {
+        MessageDigest md5 = MD5.get();
+        md5.reset();
+        md5.update(key.getBytes(StandardCharsets.US_ASCII));
+        return Utils.intLEFromBytes(md5.digest());
+    }
+
+    /**
+     * MD5 of an ASCII string, returns the first 4 bytes of digest as a little-endian int.
+     * <p>
+     * The padded message is read directly from the string, so that nothing is allocated.
+     */
+    static int md5FirstIntLE(String key) {
+        int len = key.length();
+        long bitLen = (long) len << 3;
+        int blocks = (len + 8) / 64 + 1;
+        int a0 = 0x67452301;
+        int b0 = 0xefcdab89;
+        int c0 = 0x98badcfe;
+        int d0 = 0x10325476;
+        for (int block = 0; block < blocks; block++) {
+            int base = block << 6;
+            boolean last = block == blocks - 1;
+            int a = a0;
+            int b = b0;
+            int c = c0;
+            int d = d0;
+            for (int i = 0; i < 64; i++) {
+                int f;
+                int g;
+                if (i < 16) {
+                    f = (b & c) | (~b & d);
+                    g = i;
+                } else if (i < 32) {
+                    f = (d & b) | (~d & c);
+                    g = (5 * i + 1) & 15;
+                } else if (i < 48) {
+                    f = b ^ c ^ d;
+                    g = (3 * i + 5) & 15;
+                } else {
+                    f = c ^ (b | ~d);
+                    g = (7 * i) & 15;
+                }
+                int word;
+                if (last && g == 14) {
+                    word = (int) bitLen;
+                } else if (last && g == 15) {
+                    word = (int) (bitLen >>> 32);
+                } else {
+                    int pos = base + (g << 2);
+                    word = paddedByte(key, len, pos)
+                            | paddedByte(key, len, pos + 1) << 8
+                            | paddedByte(key, len, pos + 2) << 16
+                            | paddedByte(key, len, pos + 3) << 24;
+                }
+                f = f + a + CONSTANTS[i] + word;
+                a = d;
+                d = c;
+                c = b;
+                b = b + Integer.rotateLeft(f, SHIFTS[i]);
+            }
+            a0 += a;
+            b0 += b;
+            c0 += c;
+            d0 += d;
+        }
+        return a0;
+    }
+
+    private static int paddedByte(String key, int len, int pos) {
+        if (pos < len) {
+            return key.charAt(pos);
+        }
+        return pos == len ? 0x80 : 0;
+    }
 }
@@ -2,6 +2,7 @@ package co.featureflags.server.exterior;
 
 import java.io.Closeable;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Interface for a data storage that holds feature flags, user segments or any other related data received by the SDK.
@@ -75,4 +76,19 @@ public interface DataStorage extends Closeable {
      * @return a long value
      */
     long getVersion();
+
+    /**
+     * Returns the keys of the items of a collection that were inserted, updated, archived or removed after a given
+     * version of storage.
+     * <p>
+     * The default implementation doesn't track the changes and returns null, so that the SDK considers that all
+     * the items changed; a storage may also return null for a version whose changes are no longer tracked.
+     *
+     * @param category     specifies which collection to use
+     * @param sinceVersion a version returned by {@link #getVersion()}
+     * @return the keys of the changed items, or null if the changes since this version are unknown
+     */
+    default Set<String> getChangedKeys(DataStoreTypes.Category category, long sinceVersion) {
+        return null;
+    }
 }
\ No newline at end of file
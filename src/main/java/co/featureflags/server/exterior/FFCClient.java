@@ -4,11 +4,18 @@ import co.featureflags.commons.model.AllFlagStates;
 import co.featureflags.commons.model.FFCUser;
 import co.featureflags.commons.model.FlagState;
 import co.featureflags.commons.model.UserTag;
+import co.featureflags.server.BoolFlagHandle;
+import co.featureflags.server.ChangedFlagStates;
+import co.featureflags.server.EvaluationSession;
+import co.featureflags.server.Statistics;
 import co.featureflags.server.Status;
+import co.featureflags.server.UserVariation;
 
 import java.io.Closeable;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 
 /**
@@ -88,6 +95,32 @@ public interface FFCClient extends Closeable {
      */
     boolean isEnabled(String featureFlag);
 
+    /**
+     * Returns a reusable handle of a boolean feature flag, meant to be obtained once, for example at startup, and used
+     * in the hot paths.
+     * <p>
+     * A handle skips the resolution of the flag key and the type check of its variations as long as the data are not
+     * updated, and keeps the counters of its evaluations. The handle of an unknown flag returns the default value until
+     * the flag is created.
+     *
+     * @param featureFlagKey the unique key for the feature flag
+     * @return a {@link co.featureflags.server.BoolFlagHandle}
+     * @throws IllegalArgumentException if the key is blank
+     */
+    BoolFlagHandle boolFlag(String featureFlagKey);
+
+    /**
+     * Opens a session to evaluate the flags for a same user, for example the flags checked to render a page.
+     * <p>
+     * The state derived from the user is computed once in the session, and all the variations are sent in a single
+     * insight event when the session is closed, rather than an event per evaluation. A session is meant to be used by
+     * a single thread and closed by a try-with-resources statement.
+     *
+     * @param user the end user requesting the flags
+     * @return a {@link co.featureflags.server.EvaluationSession}
+     */
+    EvaluationSession session(FFCUser user);
+
     /**
      * Calculates the double value of a feature flag for a given user.
      * <p>
@@ -200,6 +233,14 @@ public interface FFCClient extends Closeable {
      */
     Status.DataUpdateStatusProvider getDataUpdateStatusProvider();
 
+    /**
+     * Returns an interface for querying the runtime statistics of the evaluation, such as the hits and misses of the
+     * caches used by the SDK.
+     *
+     * @return a {@link co.featureflags.server.Statistics.StatisticsProvider}
+     */
+    Statistics.StatisticsProvider getStatisticsProvider();
+
     /**
      * initialization in the offline mode
      * <p>
@@ -215,12 +256,65 @@ public interface FFCClient extends Closeable {
      * that describes the way the value was determined, that can be used on the client side sdk or a front end .
      * <p>
      * note that this method does not send insight events back to featureflag.co.
+     * <p>
+     * In a large environment, the flags can be evaluated in parallel,
+     * see {@link co.featureflags.server.FFCConfig.Builder#parallelEvaluationThreshold(int)}.
      *
      * @param user the end user requesting the flag
      * @return a {@link AllFlagStates}
      */
     AllFlagStates<String> getAllLatestFlagsVariations(FFCUser user);
 
+    /**
+     * Evaluates a flag for many users, for example in an offline job, and returns the flag values with details in the
+     * order of the users.
+     * <p>
+     * The flag is resolved once for all the users, which are evaluated by chunks in parallel, on the pool set by
+     * {@link co.featureflags.server.FFCConfig.Builder#evaluationPool(java.util.concurrent.ForkJoinPool)}.
+     * The returned stream is lazy: a chunk is evaluated when the stream reaches it, so that the users may come from
+     * a large stream.
+     * <p>
+     * If the flag is unknown, or the client is not initialized, all the users get the default value.
+     *
+     * @param featureFlagKey the unique key for the feature flag
+     * @param users          the end users
+     * @param defaultValue   the default value of the flag
+     * @param batchInsights  true to hand the insight events of a chunk over to the insight processor in one call,
+     *                       rather than one call per user; the events are delivered in batches, not aggregated,
+     *                       an event is still sent for each user
+     * @return a stream of {@link co.featureflags.server.UserVariation}
+     */
+    Stream<UserVariation> batchVariation(String featureFlagKey, Stream<FFCUser> users, String defaultValue, boolean batchInsights);
+
+    /**
+     * Evaluates a flag for many users, see {@link #batchVariation(String, Stream, String, boolean)}
+     *
+     * @param featureFlagKey the unique key for the feature flag
+     * @param users          the end users
+     * @param defaultValue   the default value of the flag
+     * @param batchInsights  true to hand the insight events of a chunk over to the insight processor in one call,
+     *                       rather than one call per user; the events are delivered in batches, not aggregated,
+     *                       an event is still sent for each user
+     * @return a stream of {@link co.featureflags.server.UserVariation}
+     */
+    Stream<UserVariation> batchVariation(String featureFlagKey, Collection<FFCUser> users, String defaultValue, boolean batchInsights);
+
+    /**
+     * Returns the variations of the flags whose definition, or one of their segments or prerequisites, changed since
+     * a version of storage, for a given user. It's meant for the clients polling the flags, which can pass the version
+     * returned by the previous call.
+     * <p>
+     * The flags are evaluated as by {@link #getAllLatestFlagsVariations(FFCUser)}; all the flags are returned if the
+     * changes since the version are unknown, for example in the first call or if the storage doesn't track the changes.
+     * Note that a change of the user attributes is not a change of the flags, the caller should pass an old version,
+     * like 0, in that case.
+     *
+     * @param user         the end user requesting the flag
+     * @param sinceVersion the version returned by the previous call, or 0
+     * @return a {@link co.featureflags.server.ChangedFlagStates}
+     */
+    ChangedFlagStates getChangedFlagsVariations(FFCUser user, long sinceVersion);
+
     /**
      * return a list of user tags used to instantiate a {@link FFCUser}
      *
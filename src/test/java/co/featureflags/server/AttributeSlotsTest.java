@@ -0,0 +1,125 @@
+package co.featureflags.server;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AttributeSlotsTest {
+
+    @Test
+    public void clausesOfSameAttributeShareSlot() {
+        DataModel.Segment segment = segment(new DataModel.RuleItem("plan", Evaluator.EQ_CLAUSE, "premium"),
+                new DataModel.RuleItem("age", Evaluator.GT_CLAUSE, "18"),
+                new DataModel.RuleItem("plan", Evaluator.NEQ_CLAUSE, "free"));
+        AttributeSlots slots = AttributeSlots.build(Collections.emptyList(), Collections.singletonList(segment), 1L);
+        EvaluationPlan.Clause[] clauses = segment.plan().rules[0].clauses;
+
+        assertEquals(2, slots.count);
+        assertEquals(1L, slots.version);
+        // the slots are given by the sorted attribute names
+        assertEquals(1, slots.slotOf(clauses[0]));
+        assertEquals(0, slots.slotOf(clauses[1]));
+        assertEquals(1, slots.slotOf(clauses[2]));
+    }
+
+    @Test
+    public void clauseWithoutAttributeHasNoSlot() {
+        DataModel.Segment segment = segment(new DataModel.RuleItem("User is in segment", Evaluator.IS_IN_SEGMENT_CLAUSE, "[\"s\"]"),
+                new DataModel.RuleItem("age", "", "18"));
+        AttributeSlots slots = AttributeSlots.build(Collections.emptyList(), Collections.singletonList(segment), 1L);
+
+        assertEquals(0, slots.count);
+        for (EvaluationPlan.Clause clause : segment.plan().rules[0].clauses) {
+            assertEquals(-1, slots.slotOf(clause));
+        }
+    }
+
+    @Test
+    public void clauseUnknownToTableHasNoSlot() {
+        DataModel.Segment segment = segment(new DataModel.RuleItem("plan", Evaluator.EQ_CLAUSE, "premium"));
+        AttributeSlots slots = AttributeSlots.build(Collections.emptyList(), Collections.singletonList(segment), 1L);
+        DataModel.Segment later = segment(new DataModel.RuleItem("plan", Evaluator.EQ_CLAUSE, "premium"));
+
+        assertEquals(0, slots.slotOf(segment.plan().rules[0].clauses[0]));
+        assertEquals(-1, slots.slotOf(later.plan().rules[0].clauses[0]));
+        assertEquals(-1, AttributeSlots.EMPTY.slotOf(segment.plan().rules[0].clauses[0]));
+    }
+
+    @Test
+    public void everyClauseHasSlot() {
+        List<DataModel.Segment> segments = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            segments.add(segment(new DataModel.RuleItem("attribute-" + (i % 50), Evaluator.EQ_CLAUSE, "v"),
+                    new DataModel.RuleItem("age", Evaluator.GT_CLAUSE, String.valueOf(i))));
+        }
+        // a clause compiled between the segments
+        segment(new DataModel.RuleItem("plan", Evaluator.EQ_CLAUSE, "premium"));
+        segments.add(segment(new DataModel.RuleItem("plan", Evaluator.EQ_CLAUSE, "premium")));
+        AttributeSlots slots = AttributeSlots.build(Collections.emptyList(), segments, 1L);
+
+        assertEquals(52, slots.count);
+        for (DataModel.Segment segment : segments) {
+            for (EvaluationPlan.Clause clause : segment.plan().rules[0].clauses) {
+                int slot = slots.slotOf(clause);
+                assertTrue(slot >= 0 && slot < slots.count);
+            }
+        }
+        assertNotEquals(slots.slotOf(segments.get(0).plan().rules[0].clauses[0]),
+                slots.slotOf(segments.get(1).plan().rules[0].clauses[0]));
+    }
+
+    @Test
+    public void updateReplacesClausesOfItem() {
+        DataModel.Segment previous = segment(new DataModel.RuleItem("plan", Evaluator.EQ_CLAUSE, "premium"),
+                new DataModel.RuleItem("age", Evaluator.GT_CLAUSE, "18"));
+        DataModel.Segment other = segment(new DataModel.RuleItem("country", Evaluator.EQ_CLAUSE, "fr"));
+        AttributeSlots slots = AttributeSlots.build(Collections.emptyList(), Arrays.asList(previous, other), 1L);
+        DataModel.Segment current = segment(new DataModel.RuleItem("plan", Evaluator.EQ_CLAUSE, "free"),
+                new DataModel.RuleItem("email", Evaluator.ENDS_WITH_CLAUSE, ".com"));
+
+        AttributeSlots updated = slots.update(previous, current, 2L);
+        assertEquals(2L, updated.version);
+        // a new attribute takes the next slot, the slots of the other attributes are kept
+        assertEquals(4, updated.count);
+        assertEquals(slots.slotOf(previous.plan().rules[0].clauses[0]), updated.slotOf(current.plan().rules[0].clauses[0]));
+        assertEquals(3, updated.slotOf(current.plan().rules[0].clauses[1]));
+        assertEquals(slots.slotOf(other.plan().rules[0].clauses[0]), updated.slotOf(other.plan().rules[0].clauses[0]));
+        for (EvaluationPlan.Clause clause : previous.plan().rules[0].clauses) {
+            assertEquals(-1, updated.slotOf(clause));
+        }
+        // the previous table is unchanged
+        assertEquals(-1, slots.slotOf(current.plan().rules[0].clauses[0]));
+
+        AttributeSlots removed = updated.update(current, new DataModel.ArchivedTimestampData("segment", 3L), 3L);
+        for (EvaluationPlan.Clause clause : current.plan().rules[0].clauses) {
+            assertEquals(-1, removed.slotOf(clause));
+        }
+    }
+
+    @Test
+    public void fullTableMustBeBuiltAgain() {
+        AttributeSlots slots = AttributeSlots.build(Collections.emptyList(), Collections.emptyList(), 1L);
+        DataModel.Segment segment = segment(new DataModel.RuleItem("plan", Evaluator.EQ_CLAUSE, "premium"),
+                new DataModel.RuleItem("age", Evaluator.GT_CLAUSE, "18"));
+        for (long version = 2L; slots != null; version++) {
+            DataModel.Segment next = segment(new DataModel.RuleItem("plan", Evaluator.EQ_CLAUSE, "premium"),
+                    new DataModel.RuleItem("age", Evaluator.GT_CLAUSE, String.valueOf(version)));
+            slots = slots.update(segment, next, version);
+            segment = next;
+            assertTrue(version < 100L);
+        }
+        assertEquals(null, AttributeSlots.EMPTY.update(null, segment, 1L));
+    }
+
+    private static DataModel.Segment segment(DataModel.RuleItem... items) {
+        DataModel.TargetRule rule = new DataModel.TargetRule("rule", "rule", null, Arrays.asList(items), null);
+        return new DataModel.Segment("segment", false, 1L, null, null, Collections.singletonList(rule));
+    }
+}
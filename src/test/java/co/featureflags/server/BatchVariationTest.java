@@ -0,0 +1,144 @@
+package co.featureflags.server;
+
+import co.featureflags.commons.model.EvalDetail;
+import co.featureflags.commons.model.FFCUser;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static co.featureflags.server.TestData.TRUE;
+import static co.featureflags.server.TestData.flag;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BatchVariationTest {
+
+    // one more chunk than a full one
+    private static final int USERS = FFCClientImp.BATCH_CHUNK_SIZE + 10;
+
+    @Test
+    public void resultsAreInOrderOfUsers() {
+        List<FFCUser> users = users(USERS);
+        TestData.TestClient test = client();
+
+        List<UserVariation> results;
+        try (Stream<UserVariation> stream = test.client.batchVariation("a", users.stream(), "default", false)) {
+            results = stream.collect(Collectors.toList());
+        }
+
+        assertEquals(USERS, results.size());
+        for (int i = 0; i < USERS; i++) {
+            assertSame(users.get(i), results.get(i).getUser());
+            EvalDetail<String> detail = results.get(i).getFlagState().getData();
+            // the users of even index are targeted
+            assertEquals(i % 2 == 0 ? "true" : "false", detail.getVariation());
+            assertEquals(i % 2 == 0 ? Evaluator.REASON_TARGET_MATCH : Evaluator.REASON_FALLTHROUGH, detail.getReason());
+        }
+    }
+
+    @Test
+    public void eventIsSentForEachUser() {
+        List<FFCUser> users = users(USERS);
+        TestData.TestClient test = client();
+
+        test.client.batchVariation("a", users, "default", false).forEach(result -> {
+        });
+
+        assertEquals(USERS, test.events.size());
+        List<FFCUser> eventUsers = new ArrayList<>();
+        for (InsightTypes.Event event : test.events) {
+            assertTrue(event instanceof InsightTypes.FlagEvent);
+            assertEquals(1, event.size());
+            eventUsers.add(event.getUser());
+        }
+        // the users of a chunk are evaluated in parallel, their events are sent in any order
+        assertTrue(eventUsers.containsAll(users));
+    }
+
+    @Test
+    public void eventsOfChunkAreBatched() {
+        List<FFCUser> users = users(USERS);
+        TestData.TestClient test = client();
+
+        test.client.batchVariation("a", users, "default", true).forEach(result -> {
+        });
+
+        // a batch per chunk, holding the event of each user in order
+        assertEquals(2, test.events.size());
+        List<InsightTypes.Event> first = ((InsightTypes.BatchEvent) test.events.get(0)).getEvents();
+        List<InsightTypes.Event> second = ((InsightTypes.BatchEvent) test.events.get(1)).getEvents();
+        assertEquals(FFCClientImp.BATCH_CHUNK_SIZE, first.size());
+        assertEquals(10, second.size());
+        for (int i = 0; i < USERS; i++) {
+            InsightTypes.Event event = i < first.size() ? first.get(i) : second.get(i - first.size());
+            assertSame(users.get(i), event.getUser());
+            assertEquals(1, event.size());
+        }
+    }
+
+    @Test
+    public void lazyStreamEvaluatesChunkWhenReached() {
+        TestData.TestClient test = client();
+
+        try (Stream<UserVariation> stream = test.client.batchVariation("a", users(USERS).stream(), "default", true)) {
+            assertEquals(0, test.events.size());
+            stream.limit(1).forEach(result -> {
+            });
+        }
+        assertEquals(1, test.events.size());
+    }
+
+    @Test
+    public void userWithoutKeyGetsDefault() {
+        List<FFCUser> users = new ArrayList<>();
+        users.add(null);
+        users.add(new FFCUser.Builder("user-0").userName("user-0").build());
+        TestData.TestClient test = client();
+
+        List<UserVariation> results = test.client.batchVariation("a", users, "default", true).collect(Collectors.toList());
+
+        assertEquals("default", results.get(0).getFlagState().getData().getVariation());
+        assertEquals(Evaluator.REASON_USER_NOT_SPECIFIED, results.get(0).getFlagState().getData().getReason());
+        assertEquals("true", results.get(1).getFlagState().getData().getVariation());
+        assertEquals(1, ((InsightTypes.BatchEvent) test.events.get(0)).getEvents().size());
+    }
+
+    @Test
+    public void unknownFlagGivesDefaultToAllUsers() {
+        List<FFCUser> users = users(USERS);
+        TestData.TestClient test = client();
+
+        for (boolean batchInsights : new boolean[]{false, true}) {
+            List<UserVariation> results = test.client.batchVariation("unknown", users, "default", batchInsights)
+                    .collect(Collectors.toList());
+
+            assertEquals(USERS, results.size());
+            for (int i = 0; i < USERS; i++) {
+                assertSame(users.get(i), results.get(i).getUser());
+                assertEquals("default", results.get(i).getFlagState().getData().getVariation());
+                assertEquals(Evaluator.REASON_FLAG_NOT_FOUND, results.get(i).getFlagState().getData().getReason());
+            }
+        }
+        assertTrue(test.events.isEmpty());
+    }
+
+    private static TestData.TestClient client() {
+        List<String> targeted = new ArrayList<>();
+        for (int i = 0; i < USERS; i += 2) {
+            targeted.add("user-" + i);
+        }
+        return new TestData.TestClient().init(flag("a").target(TRUE, targeted.toArray(new String[0])).build());
+    }
+
+    private static List<FFCUser> users(int count) {
+        List<FFCUser> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            users.add(new FFCUser.Builder("user-" + i).userName("user-" + i).build());
+        }
+        return users;
+    }
+}
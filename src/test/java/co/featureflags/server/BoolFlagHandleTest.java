@@ -0,0 +1,112 @@
+package co.featureflags.server;
+
+import co.featureflags.commons.model.FFCUser;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static co.featureflags.server.TestData.FALSE;
+import static co.featureflags.server.TestData.TRUE;
+import static co.featureflags.server.TestData.flag;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BoolFlagHandleTest {
+
+    private static final FFCUser USER = new FFCUser.Builder("user-1").userName("user-1").build();
+
+    @Test
+    public void flagIsResolvedOncePerVersion() {
+        TestData.TestClient test = new TestData.TestClient().init(flag("a").build());
+        BoolFlagHandle handle = test.client.boolFlag("a");
+        DataModel.FeatureFlag flag = flag("a").build();
+        AtomicInteger resolutions = new AtomicInteger();
+
+        BoolFlagHandle.Resolved first = handle.resolve(1L, key -> {
+            resolutions.incrementAndGet();
+            return flag;
+        });
+        assertSame(first, handle.resolve(1L, key -> {
+            resolutions.incrementAndGet();
+            return flag;
+        }));
+        assertEquals(1, resolutions.get());
+        assertSame(flag, first.flag);
+        assertFalse(first.checkType);
+
+        BoolFlagHandle.Resolved second = handle.resolve(2L, key -> null);
+        assertNull(second.flag);
+        assertTrue(second.checkType);
+    }
+
+    @Test
+    public void flagIsResolvedAgainAfterUpsert() {
+        TestData.TestClient test = new TestData.TestClient().init(flag("a").build());
+        BoolFlagHandle handle = test.client.boolFlag("a");
+        assertFalse(handle.isEnabled(USER));
+
+        test.upsert(flag("a").timestamp(2L).fallthrough(TestData.serve(TRUE)).build());
+        assertTrue(handle.isEnabled(USER));
+
+        test.archive(flag("a").timestamp(2L).build());
+        assertTrue(handle.boolVariation(USER, true));
+        assertFalse(handle.isEnabled(USER));
+
+        assertEquals(4L, handle.getEvaluationCount());
+        assertEquals(2L, handle.getEnabledCount());
+        assertEquals(2L, handle.getErrorCount());
+        // an event per successful evaluation
+        assertEquals(2, test.events.size());
+    }
+
+    @Test
+    public void unknownFlagGivesDefault() {
+        TestData.TestClient test = new TestData.TestClient().init(flag("a").build());
+        BoolFlagHandle handle = test.client.boolFlag("b");
+        assertTrue(handle.boolVariation(USER, true));
+        assertFalse(handle.isEnabled(USER));
+        assertEquals(2L, handle.getErrorCount());
+
+        // the flag is created later
+        test.upsert(flag("b").fallthrough(TestData.serve(TRUE)).build());
+        assertTrue(handle.isEnabled(USER));
+        assertEquals(2L, handle.getErrorCount());
+    }
+
+    @Test
+    public void flagOfOtherTypeGivesDefault() {
+        DataModel.VariationOption x = new DataModel.VariationOption(1, 1, "x");
+        DataModel.VariationOption y = new DataModel.VariationOption(2, 2, "y");
+        TestData.TestClient test = new TestData.TestClient()
+                .init(flag("a").variations(y, x, y).fallthrough(TestData.serve(x)).build());
+        BoolFlagHandle handle = test.client.boolFlag("a");
+
+        assertTrue(handle.boolVariation(USER, true));
+        assertFalse(handle.boolVariation(USER, false));
+        assertEquals(2L, handle.getErrorCount());
+        assertTrue(test.events.isEmpty());
+
+        // the flag becomes a boolean one
+        test.upsert(flag("a").timestamp(2L).variations(FALSE, TRUE, FALSE).fallthrough(TestData.serve(TRUE)).build());
+        assertTrue(handle.boolVariation(USER, false));
+        assertEquals(2L, handle.getErrorCount());
+    }
+
+    @Test
+    public void userIsRequired() {
+        TestData.TestClient test = new TestData.TestClient().init(flag("a").fallthrough(TestData.serve(TRUE)).build());
+        BoolFlagHandle handle = test.client.boolFlag("a");
+
+        assertFalse(handle.isEnabled(null));
+        assertEquals(1L, handle.getErrorCount());
+        assertTrue(handle.isEnabled(USER));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void keyIsRequired() {
+        new TestData.TestClient().client.boolFlag(" ");
+    }
+}
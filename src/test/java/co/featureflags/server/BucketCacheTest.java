@@ -0,0 +1,43 @@
+package co.featureflags.server;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class BucketCacheTest {
+
+    @Test
+    public void cachedPercentagesAreComputedOnes() {
+        BucketCache uncached = new BucketCache(0);
+        // a small table, so that the keys replace each other
+        BucketCache cached = new BucketCache(16);
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 1000; i++) {
+                String key = "user-" + (i % (round == 0 ? 1000 : 20));
+                assertEquals(key, uncached.rolloutPercentage(key), cached.rolloutPercentage(key), 0D);
+                assertEquals(key, uncached.experimentPercentage(key), cached.experimentPercentage(key), 0D);
+                assertEquals(VariationSplittingAlgorithm.percentageOfKey(key), cached.rolloutPercentage(key), 0D);
+                String experimentKey = Base64.getEncoder().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+                assertEquals(VariationSplittingAlgorithm.percentageOfKey(experimentKey), cached.experimentPercentage(key), 0D);
+            }
+        }
+    }
+
+    @Test
+    public void repeatedKeyHits() {
+        BucketCache cache = new BucketCache(16);
+        cache.rolloutPercentage("user-1");
+        cache.experimentPercentage("user-1");
+        cache.rolloutPercentage("user-1");
+
+        Statistics.CacheStatistics statistics = cache.statistics();
+        assertEquals(2L, statistics.getHitCount());
+        assertEquals(1L, statistics.getMissCount());
+        assertEquals(1L, statistics.getSize());
+        assertSame(Statistics.CacheStatistics.EMPTY, new BucketCache(0).statistics());
+    }
+}
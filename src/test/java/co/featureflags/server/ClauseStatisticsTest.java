@@ -0,0 +1,110 @@
+package co.featureflags.server;
+
+import co.featureflags.commons.model.FFCUser;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static co.featureflags.server.TestData.FALSE;
+import static co.featureflags.server.TestData.TRUE;
+import static co.featureflags.server.TestData.clause;
+import static co.featureflags.server.TestData.flag;
+import static co.featureflags.server.TestData.rule;
+import static co.featureflags.server.TestData.segment;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The order of evaluation of the clauses of a rule adapts to the users, the results must be the ones of the order
+ * of the rule.
+ */
+public class ClauseStatisticsTest {
+
+    private static final DataModel.VariationOption OTHER = new DataModel.VariationOption(3, 3, "other");
+
+    @Test
+    public void adaptedOrderGivesSameResults() {
+        List<FFCUser> users = new ArrayList<>();
+        List<String> included = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            String key = "user-" + i;
+            users.add(new FFCUser.Builder(key)
+                    .userName(key)
+                    .country(i % 1000 == 0 ? "us" : "fr")
+                    .email(i % 10 == 0 ? key + "@example.com" : key + "@other.org")
+                    .custom("age", String.valueOf(i % 60))
+                    .build());
+            if (i % 3 == 0) {
+                included.add(key);
+            }
+        }
+        // the users of the segment: the included ones and the ones of a regex rule
+        DataModel.Segment segment = segment("segment", 1L, included,
+                rule(null, clause("email", Evaluator.MATCH_REGEX_CLAUSE, "^user-1.*")));
+        // the cheapest clause almost never fails and the regex mostly fails, the regex must come first
+        DataModel.FeatureFlag flag = flag("flag")
+                .variations(FALSE, TRUE, FALSE, OTHER)
+                .rule(TRUE,
+                        clause(Evaluator.IS_IN_SEGMENT_CLAUSE, Evaluator.IS_IN_SEGMENT_CLAUSE, "[\"segment\"]"),
+                        clause("email", Evaluator.MATCH_REGEX_CLAUSE, ".*@example\\.com$"),
+                        clause("country", Evaluator.EQ_CLAUSE, "fr"))
+                .rule(OTHER,
+                        clause("age", Evaluator.GT_CLAUSE, "30"),
+                        clause(Evaluator.NOT_IN_SEGMENT_CLAUSE, Evaluator.NOT_IN_SEGMENT_CLAUSE, "[\"segment\"]"),
+                        clause("email", Evaluator.NOT_MATCH_REGEX_CLAUSE, "^user-2"),
+                        clause("country", Evaluator.NEQ_CLAUSE, "us"))
+                .build();
+        EvaluatorImp evaluator = evaluator(flag, segment);
+        EvaluationPlan.Rule[] rules = flag.plan().rules;
+        List<EvaluationPlan.Clause> initial = Arrays.asList(rules[0].statistics.order());
+
+        List<String> expected = new ArrayList<>();
+        for (FFCUser user : users) {
+            expected.add(expected(rules, user, evaluator));
+        }
+        assertTrue(expected.containsAll(Arrays.asList("true", "other", "false")));
+        // the order goes back and forth: once the regex comes first, the equality is rarely evaluated
+        boolean adapted = false;
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < users.size(); i++) {
+                Evaluator.EvalResult result = evaluator.evaluate(flag, users.get(i), InsightTypes.NullEvent.INSTANCE);
+                assertEquals(users.get(i).getKey(), expected.get(i), result.getValue());
+                adapted |= !initial.equals(Arrays.asList(rules[0].statistics.order()));
+            }
+        }
+        assertTrue(adapted);
+    }
+
+    // the value of the first rule whose clauses, evaluated in the order of the rule, all match
+    private static String expected(EvaluationPlan.Rule[] rules, FFCUser user, EvaluationPlan.SegmentMatcher segments) {
+        String[] values = {"true", "other"};
+        for (int i = 0; i < rules.length; i++) {
+            boolean matched = true;
+            for (EvaluationPlan.Clause clause : rules[i].clauses) {
+                matched &= clause.matches(new PreparedUser(user, AttributeSlots.EMPTY), segments);
+            }
+            if (matched) {
+                return values[i];
+            }
+        }
+        return "false";
+    }
+
+    private static EvaluatorImp evaluator(DataModel.FeatureFlag flag, DataModel.Segment segment) {
+        Evaluator.Getter<DataModel.FeatureFlag> flags = id -> id.equals(flag.getId()) ? flag : null;
+        Evaluator.Getter<DataModel.Segment> segments = id -> id.equals(segment.getId()) ? segment : null;
+        PrerequisiteGraph graph = PrerequisiteGraph.build(Collections.singletonList(flag), 1L);
+        AttributeSlots slots = AttributeSlots.build(Collections.singletonList(flag), Collections.singletonList(segment), 1L);
+        return new EvaluatorImp(flags,
+                segments,
+                new BucketCache(0),
+                new DecisionLogger(org.slf4j.helpers.NOPLogger.NOP_LOGGER, 1D, null),
+                () -> graph,
+                () -> slots,
+                new EvalResultCache(0, null, () -> 1L, flags, segments),
+                new SegmentCache(0));
+    }
+}
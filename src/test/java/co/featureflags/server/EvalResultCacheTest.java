@@ -0,0 +1,134 @@
+package co.featureflags.server;
+
+import co.featureflags.commons.model.FFCUser;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static co.featureflags.server.TestData.TRUE;
+import static co.featureflags.server.TestData.clause;
+import static co.featureflags.server.TestData.flag;
+import static co.featureflags.server.TestData.segment;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class EvalResultCacheTest {
+
+    private static final FFCUser USER = new FFCUser.Builder("user-1").userName("user-1").country("fr").email("user-1@example.com").build();
+
+    private final Map<String, DataModel.FeatureFlag> flags = new ConcurrentHashMap<>();
+    private final Map<String, DataModel.Segment> segments = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong(1L);
+    private final EvalResultCache cache = new EvalResultCache(100, null, version::get, flags::get, segments::get);
+    private final EvaluatorImp evaluator = new EvaluatorImp(flags::get,
+            segments::get,
+            new BucketCache(0),
+            new DecisionLogger(org.slf4j.helpers.NOPLogger.NOP_LOGGER, 1D, null),
+            () -> PrerequisiteGraph.EMPTY,
+            () -> AttributeSlots.EMPTY,
+            cache,
+            new SegmentCache(0));
+
+    @Test
+    public void hitSendsSameVariations() {
+        DataModel.FeatureFlag flag = put(flag("a").prerequisite("b", TRUE).rule(TRUE, clause("country", Evaluator.EQ_CLAUSE, "fr")).build());
+        put(flag("b").fallthrough(TestData.serve(TRUE)).build());
+
+        InsightTypes.FlagEvent missed = InsightTypes.FlagEvent.of(USER);
+        Evaluator.EvalResult first = evaluator.evaluate(flag, USER, missed);
+        InsightTypes.FlagEvent hit = InsightTypes.FlagEvent.of(USER);
+        Evaluator.EvalResult second = evaluator.evaluate(flag, USER, hit);
+
+        assertHits(1, 1);
+        assertSame(first, second);
+        assertEquals("true", second.getValue());
+        // the prerequisite, then the flag
+        assertEquals(2, missed.getUserVariations().size());
+        assertEquals(missed.getUserVariations().size(), hit.getUserVariations().size());
+        for (int i = 0; i < missed.getUserVariations().size(); i++) {
+            assertEquals(missed.getUserVariations().get(i).getFeatureFlagKeyName(), hit.getUserVariations().get(i).getFeatureFlagKeyName());
+            assertSame(missed.getUserVariations().get(i).getVariation(), hit.getUserVariations().get(i).getVariation());
+        }
+    }
+
+    @Test
+    public void upsertOfPrerequisiteMisses() {
+        DataModel.FeatureFlag flag = put(flag("a").prerequisite("b", TRUE).fallthrough(TestData.serve(TRUE)).build());
+        put(flag("b").fallthrough(TestData.serve(TRUE)).build());
+        assertEquals("true", evaluate(flag));
+
+        put(flag("b").timestamp(2L).build());
+        assertEquals("false", evaluate(flag));
+        assertHits(0, 2);
+        assertEquals("false", evaluate(flag));
+        assertHits(1, 2);
+    }
+
+    @Test
+    public void upsertOfSegmentMisses() {
+        DataModel.FeatureFlag flag = put(flag("a").rule(TRUE, clause(Evaluator.IS_IN_SEGMENT_CLAUSE, Evaluator.IS_IN_SEGMENT_CLAUSE, "[\"segment\"]")).build());
+        put(segment("segment", 1L, Collections.singletonList("user-1")));
+        assertEquals("true", evaluate(flag));
+
+        put(segment("segment", 2L, Collections.emptyList()));
+        assertEquals("false", evaluate(flag));
+        assertHits(0, 2);
+    }
+
+    @Test
+    public void upsertOfOtherItemsHits() {
+        DataModel.FeatureFlag flag = put(flag("a").prerequisite("b", TRUE).fallthrough(TestData.serve(TRUE)).build());
+        put(flag("b").fallthrough(TestData.serve(TRUE)).build());
+        evaluate(flag);
+
+        put(flag("c").timestamp(2L).build());
+        put(segment("segment", 2L, Collections.emptyList()));
+        assertEquals("true", evaluate(flag));
+        assertHits(1, 1);
+    }
+
+    @Test
+    public void attributeReadByFlagMisses() {
+        // the email is read by a segment of the prerequisite
+        DataModel.FeatureFlag flag = put(flag("a").prerequisite("b", TRUE).rule(TRUE, clause("country", Evaluator.EQ_CLAUSE, "fr")).build());
+        put(flag("b").rule(TRUE, clause(Evaluator.IS_IN_SEGMENT_CLAUSE, Evaluator.IS_IN_SEGMENT_CLAUSE, "[\"segment\"]")).build());
+        put(segment("segment", 1L, Collections.emptyList(), TestData.rule(null, clause("email", Evaluator.ENDS_WITH_CLAUSE, "@example.com"))));
+        assertEquals("true", evaluator.evaluate(flag, USER, InsightTypes.NullEvent.INSTANCE).getValue());
+
+        FFCUser otherCountry = new FFCUser.Builder("user-1").userName("user-1").country("us").email("user-1@example.com").build();
+        assertEquals("false", evaluator.evaluate(flag, otherCountry, InsightTypes.NullEvent.INSTANCE).getValue());
+        FFCUser otherEmail = new FFCUser.Builder("user-1").userName("user-1").country("fr").email("user-1@other.org").build();
+        assertEquals("false", evaluator.evaluate(flag, otherEmail, InsightTypes.NullEvent.INSTANCE).getValue());
+        assertHits(0, 3);
+
+        // an attribute read by no clause
+        FFCUser otherName = new FFCUser.Builder("user-1").userName("other").country("fr").email("user-1@example.com").build();
+        assertEquals("true", evaluator.evaluate(flag, otherName, InsightTypes.NullEvent.INSTANCE).getValue());
+        assertHits(1, 3);
+    }
+
+    private String evaluate(DataModel.FeatureFlag flag) {
+        return evaluator.evaluate(flag, USER, InsightTypes.NullEvent.INSTANCE).getValue();
+    }
+
+    private DataModel.FeatureFlag put(DataModel.FeatureFlag flag) {
+        flags.put(flag.getId(), flag);
+        version.incrementAndGet();
+        return flag;
+    }
+
+    private void put(DataModel.Segment segment) {
+        segments.put(segment.getId(), segment);
+        version.incrementAndGet();
+    }
+
+    private void assertHits(long hits, long misses) {
+        Statistics.CacheStatistics statistics = cache.statistics();
+        assertEquals(hits, statistics.getHitCount());
+        assertEquals(misses, statistics.getMissCount());
+    }
+}
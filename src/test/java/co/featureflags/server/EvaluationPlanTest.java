@@ -0,0 +1,95 @@
+package co.featureflags.server;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * The plans are compiled from the wire model when it's parsed, a malformed flag or segment must be compiled without
+ * failure into a plan that never matches its malformed parts.
+ */
+public class EvaluationPlanTest {
+
+    private static final DataModel.VariationOption TRUE = new DataModel.VariationOption(1, 1, "true");
+    private static final DataModel.VariationOption FALSE = new DataModel.VariationOption(2, 2, "false");
+
+    @Test
+    public void clauseWithoutOperationNorPropertyIsUnknown() {
+        assertEquals(EvaluationPlan.Operator.UNKNOWN, EvaluationPlan.Operator.of(new DataModel.RuleItem(null, null, null)));
+        assertEquals(EvaluationPlan.Operator.UNKNOWN, EvaluationPlan.Operator.of(new DataModel.RuleItem("age", "", "18")));
+        assertEquals(EvaluationPlan.Operator.UNKNOWN, EvaluationPlan.Operator.of(new DataModel.RuleItem(Evaluator.GT_CLAUSE, null, "18")));
+        assertEquals(EvaluationPlan.Operator.IS_IN_SEGMENT, EvaluationPlan.Operator.of(new DataModel.RuleItem(Evaluator.IS_IN_SEGMENT_CLAUSE, null, "[\"s\"]")));
+        assertEquals(EvaluationPlan.Operator.EQUAL, EvaluationPlan.Operator.of(new DataModel.RuleItem("plan", Evaluator.EQ_CLAUSE, "premium")));
+    }
+
+    @Test
+    public void flagWithoutInfoIsCompiled() {
+        DataModel.FeatureFlag flag = new DataModel.FeatureFlag("flag", false, 1L, null, null, null, null, null, null);
+        flag.afterDeserialization();
+        EvaluationPlan.Flag plan = flag.plan();
+        assertEquals("flag", plan.id);
+        assertNull(plan.keyName);
+        assertNull(plan.flagOffResult);
+        assertEquals(0, plan.rules.length);
+    }
+
+    @Test
+    public void nullElementsOfFlagAreSkipped() {
+        DataModel.TargetRule rule = new DataModel.TargetRule("rule-1",
+                "rule",
+                null,
+                Arrays.asList(null, new DataModel.RuleItem("plan", Evaluator.EQ_CLAUSE, "premium")),
+                Collections.singletonList(new DataModel.VariationOptionPercentageRollout(null, Arrays.asList(0D, 1D), TRUE)));
+        DataModel.TargetIndividuals target = new DataModel.TargetIndividuals(
+                Arrays.asList(null, new DataModel.FeatureFlagTargetIndividualUser("1", "user-1", "user-1", null)),
+                TRUE);
+        DataModel.FeatureFlagBasicInfo info = new DataModel.FeatureFlagBasicInfo("flag",
+                "flag",
+                1,
+                "flag",
+                Evaluator.FLAG_ENABLE_STATS,
+                null,
+                null,
+                Collections.singletonList(new DataModel.VariationOptionPercentageRollout(null, Arrays.asList(0D, 1D), FALSE)),
+                FALSE);
+        DataModel.FeatureFlag flag = new DataModel.FeatureFlag("flag",
+                false,
+                1L,
+                null,
+                info,
+                Arrays.asList((DataModel.FeatureFlagPrerequisite) null),
+                Arrays.asList(null, rule),
+                Arrays.asList(null, target),
+                Arrays.asList(TRUE, FALSE));
+        flag.afterDeserialization();
+        EvaluationPlan.Flag plan = flag.plan();
+        assertEquals(0, plan.prerequisites.length);
+        assertEquals(1, plan.rules.length);
+        assertEquals(1, plan.rules[0].clauses.length);
+        assertEquals(1, plan.targets.size());
+    }
+
+    @Test
+    public void nullElementsOfSegmentAreSkipped() {
+        DataModel.TargetRule rule = new DataModel.TargetRule("rule-1",
+                "rule",
+                null,
+                Arrays.asList(new DataModel.RuleItem(null, null, null), null),
+                null);
+        DataModel.Segment segment = new DataModel.Segment("segment",
+                false,
+                1L,
+                Arrays.asList("user-1", null),
+                null,
+                Arrays.asList(rule, null));
+        segment.afterDeserialization();
+        EvaluationPlan.Segment plan = segment.plan();
+        assertEquals(1, plan.rules.length);
+        assertEquals(EvaluationPlan.Operator.UNKNOWN, plan.rules[0].clauses[0].operator);
+        assertEquals(Collections.singletonList("user-1"), plan.included.keys());
+    }
+}
@@ -0,0 +1,102 @@
+package co.featureflags.server;
+
+import co.featureflags.commons.model.FFCUser;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static co.featureflags.server.TestData.TRUE;
+import static co.featureflags.server.TestData.flag;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EvaluationSessionTest {
+
+    private static final FFCUser USER = new FFCUser.Builder("user-1").userName("user-1").build();
+
+    @Test
+    public void variationsAreSentInSingleEventOnClose() {
+        TestData.TestClient test = new TestData.TestClient().init(
+                flag("a").prerequisite("b", TRUE).fallthrough(TestData.serve(TRUE)).build(),
+                flag("b").fallthrough(TestData.serve(TRUE)).build(),
+                flag("c").build());
+
+        EvaluationSession session = test.client.session(USER);
+        assertTrue(session.isEnabled("a"));
+        assertFalse(session.isEnabled("c"));
+        assertTrue(session.isEnabled("b"));
+        assertTrue(test.events.isEmpty());
+
+        session.close();
+        assertEquals(1, test.events.size());
+        InsightTypes.FlagEvent event = (InsightTypes.FlagEvent) test.events.get(0);
+        assertSame(USER, event.getUser());
+        // the variations the client would send for the same calls: the prerequisite with the flag that needs it,
+        // then again when it's called
+        assertEquals(Arrays.asList("b", "a", "c", "b"), keyNamesOf(event));
+
+        session.close();
+        assertEquals(1, test.events.size());
+    }
+
+    @Test
+    public void flagIsEvaluatedOnceInSession() {
+        TestData.TestClient test = new TestData.TestClient().init(flag("a").build());
+
+        try (EvaluationSession session = test.client.session(USER)) {
+            assertFalse(session.isEnabled("a"));
+            test.upsert(flag("a").timestamp(2L).fallthrough(TestData.serve(TRUE)).build());
+            assertFalse(session.isEnabled("a"));
+        }
+        // the result of the first call is sent for each call
+        InsightTypes.FlagEvent event = (InsightTypes.FlagEvent) test.events.get(0);
+        assertEquals(Arrays.asList("a", "a"), keyNamesOf(event));
+        assertSame(event.getUserVariations().get(0).getVariation(), event.getUserVariations().get(1).getVariation());
+    }
+
+    @Test
+    public void closedSessionEvaluatesAsClient() {
+        TestData.TestClient test = new TestData.TestClient().init(flag("a").build());
+        EvaluationSession session = test.client.session(USER);
+        assertFalse(session.isEnabled("a"));
+        session.close();
+
+        test.upsert(flag("a").timestamp(2L).fallthrough(TestData.serve(TRUE)).build());
+        assertTrue(session.isEnabled("a"));
+        assertTrue(session.isEnabled("a"));
+        // the session event, then an event per evaluation
+        assertEquals(3, test.events.size());
+        assertEquals(Arrays.asList("a"), keyNamesOf((InsightTypes.FlagEvent) test.events.get(2)));
+    }
+
+    @Test
+    public void failedEvaluationsAreNotSent() {
+        DataModel.VariationOption x = new DataModel.VariationOption(1, 1, "x");
+        TestData.TestClient test = new TestData.TestClient().init(flag("a").variations(x, x).fallthrough(TestData.serve(x)).build());
+
+        try (EvaluationSession session = test.client.session(USER)) {
+            assertTrue(session.boolVariation("a", true));
+            assertTrue(session.boolVariation("unknown", true));
+            assertEquals("x", session.variation("a", "default"));
+        }
+        assertEquals(1, test.events.size());
+        assertEquals(Arrays.asList("a"), keyNamesOf((InsightTypes.FlagEvent) test.events.get(0)));
+
+        try (EvaluationSession session = test.client.session(USER)) {
+            assertTrue(session.boolVariation("unknown", true));
+        }
+        assertEquals(1, test.events.size());
+    }
+
+    private static List<String> keyNamesOf(InsightTypes.FlagEvent event) {
+        List<String> keyNames = new ArrayList<>();
+        for (InsightTypes.FlagEventVariation variation : event.getUserVariations()) {
+            keyNames.add(variation.getFeatureFlagKeyName());
+        }
+        return keyNames;
+    }
+}
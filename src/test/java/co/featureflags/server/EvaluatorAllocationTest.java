@@ -0,0 +1,158 @@
+package co.featureflags.server;
+
+import co.featureflags.commons.model.FFCUser;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.helpers.NOPLogger;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The evaluation of the common flags allocates nothing in steady state, measured by the bytes allocated by
+ * the current thread.
+ */
+public class EvaluatorAllocationTest {
+
+    private static final int WARM_UP = 20000;
+    private static final int ITERATIONS = 100000;
+
+    private static final DataModel.VariationOption TRUE = new DataModel.VariationOption(1, 1, "true");
+    private static final DataModel.VariationOption FALSE = new DataModel.VariationOption(2, 2, "false");
+
+    private static final FFCUser USER = new FFCUser.Builder("user-1").userName("user-1").custom("plan", "premium").custom("age", "30").build();
+
+    private static com.sun.management.ThreadMXBean threads;
+
+    @BeforeClass
+    public static void setUp() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    public void disabledFlagAllocatesNothing() {
+        DataModel.FeatureFlag flag = flag("disabled",
+                Evaluator.FLAG_DISABLE_STATS,
+                Collections.emptyList(),
+                Collections.emptyList(),
+                rollouts(0D, 1D, TRUE));
+        assertAllocationFree(flag, "false", Evaluator.REASON_FLAG_OFF);
+    }
+
+    @Test
+    public void targetedUserAllocatesNothing() {
+        DataModel.TargetIndividuals target = new DataModel.TargetIndividuals(
+                Collections.singletonList(new DataModel.FeatureFlagTargetIndividualUser("1", "user-1", "user-1", null)),
+                TRUE);
+        DataModel.FeatureFlag flag = flag("targeted",
+                Evaluator.FLAG_ENABLE_STATS,
+                Collections.singletonList(target),
+                Collections.emptyList(),
+                rollouts(0D, 1D, FALSE));
+        assertAllocationFree(flag, "true", Evaluator.REASON_TARGET_MATCH);
+    }
+
+    @Test
+    public void ruleMatchAllocatesNothing() {
+        DataModel.TargetRule rule = new DataModel.TargetRule("rule-1",
+                "premium users",
+                null,
+                Arrays.asList(new DataModel.RuleItem("plan", Evaluator.EQ_CLAUSE, "premium"),
+                        new DataModel.RuleItem("age", Evaluator.GT_CLAUSE, "18")),
+                rollouts(0D, 1D, TRUE));
+        DataModel.FeatureFlag flag = flag("rule",
+                Evaluator.FLAG_ENABLE_STATS,
+                Collections.emptyList(),
+                Collections.singletonList(rule),
+                rollouts(0D, 1D, FALSE));
+        assertAllocationFree(flag, "true", Evaluator.REASON_RULE_MATCH);
+    }
+
+    @Test
+    public void rolloutAllocatesNothing() {
+        List<DataModel.VariationOptionPercentageRollout> rollouts = Arrays.asList(
+                new DataModel.VariationOptionPercentageRollout(null, Arrays.asList(0D, 0.5D), TRUE),
+                new DataModel.VariationOptionPercentageRollout(null, Arrays.asList(0.5D, 1D), FALSE));
+        DataModel.FeatureFlag flag = flag("rollout",
+                Evaluator.FLAG_ENABLE_STATS,
+                Collections.emptyList(),
+                Collections.emptyList(),
+                rollouts);
+        String expected = VariationSplittingAlgorithm.percentageOfKey(USER.getKey()) < 0.5D ? "true" : "false";
+        assertAllocationFree(flag, expected, Evaluator.REASON_FALLTHROUGH);
+    }
+
+    private static void assertAllocationFree(DataModel.FeatureFlag flag, String value, String reason) {
+        Evaluator evaluator = evaluatorOf(flag);
+        for (int i = 0; i < WARM_UP; i++) {
+            evaluator.evaluate(flag, USER, InsightTypes.NullEvent.INSTANCE);
+        }
+        Evaluator.EvalResult res = evaluator.evaluate(flag, USER, InsightTypes.NullEvent.INSTANCE);
+        assertEquals(value, res.getValue());
+        assertEquals(reason, res.getReason());
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            evaluator.evaluate(flag, USER, InsightTypes.NullEvent.INSTANCE);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        // the measurement itself may allocate a few bytes, less than one per evaluation
+        assertTrue(flag.getId() + " allocated " + allocated + " bytes in " + ITERATIONS + " evaluations",
+                allocated < ITERATIONS);
+    }
+
+    private static Evaluator evaluatorOf(DataModel.FeatureFlag flag) {
+        Evaluator.Getter<DataModel.FeatureFlag> flagGetter = id -> flag.getId().equals(id) ? flag : null;
+        Evaluator.Getter<DataModel.Segment> segmentGetter = id -> null;
+        AttributeSlots slots = AttributeSlots.build(Collections.singletonList(flag), Collections.emptyList(), 0L);
+        return new EvaluatorImp(flagGetter,
+                segmentGetter,
+                new BucketCache(BucketCache.DEFAULT_SIZE),
+                new DecisionLogger(NOPLogger.NOP_LOGGER, DecisionLogger.DEFAULT_SAMPLING_RATE, Duration.ofSeconds(1)),
+                () -> PrerequisiteGraph.EMPTY,
+                () -> slots,
+                new EvalResultCache(0, null, () -> 0L, flagGetter, segmentGetter),
+                new SegmentCache(0));
+    }
+
+    private static List<DataModel.VariationOptionPercentageRollout> rollouts(double min, double max, DataModel.VariationOption option) {
+        return Collections.singletonList(new DataModel.VariationOptionPercentageRollout(null, Arrays.asList(min, max), option));
+    }
+
+    private static DataModel.FeatureFlag flag(String id,
+                                              String status,
+                                              List<DataModel.TargetIndividuals> targets,
+                                              List<DataModel.TargetRule> rules,
+                                              List<DataModel.VariationOptionPercentageRollout> defaultRollouts) {
+        DataModel.FeatureFlagBasicInfo info = new DataModel.FeatureFlagBasicInfo(id,
+                id,
+                1,
+                id,
+                status,
+                null,
+                null,
+                defaultRollouts,
+                FALSE);
+        return new DataModel.FeatureFlag(id,
+                false,
+                1L,
+                null,
+                info,
+                Collections.emptyList(),
+                rules,
+                targets,
+                Arrays.asList(TRUE, FALSE));
+    }
+}
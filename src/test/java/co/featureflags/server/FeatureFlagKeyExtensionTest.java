@@ -0,0 +1,65 @@
+package co.featureflags.server;
+
+import co.featureflags.commons.model.FFCUser;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static co.featureflags.server.TestData.TRUE;
+import static co.featureflags.server.TestData.flag;
+import static co.featureflags.server.TestData.flagId;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FeatureFlagKeyExtensionTest {
+
+    private static final FFCUser USER = new FFCUser.Builder("user-1").userName("user-1").build();
+
+    @Test
+    public void resolverKnowsFlagsInStorage() {
+        FeatureFlagKeyExtension.FeatureFlagIdResolver resolver = FeatureFlagKeyExtension.FeatureFlagIdResolver.build(
+                Arrays.asList(flag("a").build(), flag("b").build()));
+
+        assertEquals(flagId("a"), resolver.flagIdOf("a"));
+        assertEquals(flagId("b"), resolver.flagIdOf("b"));
+        assertNull(resolver.flagIdOf("unknown"));
+        assertNull(resolver.flagIdOf(null));
+        assertNull(FeatureFlagKeyExtension.FeatureFlagIdResolver.EMPTY.flagIdOf("a"));
+    }
+
+    @Test
+    public void resolverIsSharedIfKeysAreSame() {
+        DataModel.FeatureFlag a = flag("a").build();
+        FeatureFlagKeyExtension.FeatureFlagIdResolver resolver = FeatureFlagKeyExtension.FeatureFlagIdResolver.build(
+                Arrays.asList(a));
+
+        assertSame(resolver, resolver.update(a, flag("a").timestamp(2L).disabled().build()));
+
+        FeatureFlagKeyExtension.FeatureFlagIdResolver added = resolver.update(null, flag("b").build());
+        assertEquals(flagId("b"), added.flagIdOf("b"));
+        assertNull(resolver.flagIdOf("b"));
+
+        FeatureFlagKeyExtension.FeatureFlagIdResolver removed = added.update(a, new DataModel.ArchivedTimestampData(a.getId(), 2L));
+        assertNull(removed.flagIdOf("a"));
+        assertEquals(flagId("b"), removed.flagIdOf("b"));
+    }
+
+    @Test
+    public void clientResolvesKeysOfUpdatedFlags() {
+        TestData.TestClient test = new TestData.TestClient().init(flag("a").fallthrough(TestData.serve(TRUE)).build());
+        assertTrue(test.client.boolVariation("a", USER, false));
+        assertFalse(test.client.boolVariation("b", USER, false));
+
+        DataModel.FeatureFlag b = flag("b").fallthrough(TestData.serve(TRUE)).build();
+        test.upsert(b);
+        assertTrue(test.client.boolVariation("b", USER, false));
+
+        test.archive(b);
+        assertFalse(test.client.boolVariation("b", USER, false));
+        assertTrue(test.client.boolVariation("b", USER, true));
+        assertTrue(test.client.boolVariation("a", USER, false));
+    }
+}
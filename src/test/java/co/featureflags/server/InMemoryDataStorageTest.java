@@ -0,0 +1,104 @@
+package co.featureflags.server;
+
+import co.featureflags.server.exterior.DataStoreTypes;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static co.featureflags.server.TestData.flag;
+import static co.featureflags.server.TestData.flagId;
+import static co.featureflags.server.TestData.item;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class InMemoryDataStorageTest {
+
+    @Test
+    public void changesAreUnknownBeforeInit() {
+        InMemoryDataStorage storage = new InMemoryDataStorage();
+        assertNull(storage.getChangedKeys(DataStoreTypes.FEATURES, 0L));
+    }
+
+    @Test
+    public void changesAfterVersionOfStorageAreUnknown() {
+        InMemoryDataStorage storage = new InMemoryDataStorage();
+        storage.init(data(flag("a").build()), 1L);
+
+        assertNull(storage.getChangedKeys(DataStoreTypes.FEATURES, 2L));
+        assertEquals(Collections.emptySet(), storage.getChangedKeys(DataStoreTypes.FEATURES, 1L));
+        assertEquals(ImmutableSet.of(flagId("a")), storage.getChangedKeys(DataStoreTypes.FEATURES, 0L));
+    }
+
+    @Test
+    public void initTracksDifferencesWithStoredData() {
+        InMemoryDataStorage storage = new InMemoryDataStorage();
+        storage.init(data(flag("a").build(), flag("b").build(), flag("c").build()), 1L);
+        // the same a, a new version of b, c is removed
+        storage.init(data(flag("a").build(), flag("b").timestamp(2L).build()), 2L);
+
+        assertEquals(ImmutableSet.of(flagId("b"), flagId("c")), storage.getChangedKeys(DataStoreTypes.FEATURES, 1L));
+        assertEquals(ImmutableSet.of(flagId("a"), flagId("b"), flagId("c")), storage.getChangedKeys(DataStoreTypes.FEATURES, 0L));
+        assertEquals(Collections.emptySet(), storage.getChangedKeys(DataStoreTypes.SEGMENTS, 0L));
+
+        // the same data set changes nothing
+        storage.init(data(flag("a").build(), flag("b").timestamp(2L).build()), 3L);
+        assertEquals(Collections.emptySet(), storage.getChangedKeys(DataStoreTypes.FEATURES, 2L));
+    }
+
+    @Test
+    public void upsertIsChange() {
+        InMemoryDataStorage storage = new InMemoryDataStorage();
+        storage.init(data(flag("a").build(), flag("b").build()), 1L);
+        storage.upsert(DataStoreTypes.FEATURES, flagId("a"), item(new DataModel.ArchivedTimestampData(flagId("a"), 2L)), 2L);
+        // an outdated item is not applied
+        storage.upsert(DataStoreTypes.FEATURES, flagId("b"), item(flag("b").build()), 3L);
+
+        assertEquals(ImmutableSet.of(flagId("a")), storage.getChangedKeys(DataStoreTypes.FEATURES, 1L));
+        assertEquals(Collections.emptySet(), storage.getChangedKeys(DataStoreTypes.FEATURES, 2L));
+    }
+
+    @Test
+    public void removedKeysAreBounded() {
+        int removed = InMemoryDataStorage.MAX_REMOVED_KEYS * 3 / 5;
+        DataModel.FeatureFlag[] flags = new DataModel.FeatureFlag[removed * 2 + 1];
+        for (int i = 0; i < flags.length; i++) {
+            flags[i] = flag("flag-" + i).build();
+        }
+        InMemoryDataStorage storage = new InMemoryDataStorage();
+        storage.init(data(flags), 1L);
+        // the first flags are removed at version 2, the next ones at version 3
+        DataModel.FeatureFlag[] remaining = new DataModel.FeatureFlag[flags.length - removed];
+        System.arraycopy(flags, removed, remaining, 0, remaining.length);
+        storage.init(data(remaining), 2L);
+        assertEquals(removed, storage.getChangedKeys(DataStoreTypes.FEATURES, 1L).size());
+        storage.init(data(flags[flags.length - 1]), 3L);
+
+        // the changes of some keys removed at version 2 are dropped, so the changes since then are unknown
+        assertNull(storage.getChangedKeys(DataStoreTypes.FEATURES, 0L));
+        assertNull(storage.getChangedKeys(DataStoreTypes.FEATURES, 1L));
+        Set<String> changed = storage.getChangedKeys(DataStoreTypes.FEATURES, 2L);
+        Set<String> expected = new HashSet<>();
+        for (int i = removed; i < flags.length - 1; i++) {
+            expected.add(flags[i].getId());
+        }
+        assertEquals(expected, changed);
+        assertTrue(changed.size() <= InMemoryDataStorage.MAX_REMOVED_KEYS);
+    }
+
+    private static Map<DataStoreTypes.Category, Map<String, DataStoreTypes.Item>> data(DataModel.FeatureFlag... flags) {
+        Map<String, DataStoreTypes.Item> items = new HashMap<>();
+        for (DataModel.FeatureFlag flag : flags) {
+            items.put(flag.getId(), item(flag));
+        }
+        Map<DataStoreTypes.Category, Map<String, DataStoreTypes.Item>> data = new HashMap<>();
+        data.put(DataStoreTypes.FEATURES, items);
+        data.put(DataStoreTypes.SEGMENTS, new HashMap<>());
+        return data;
+    }
+}
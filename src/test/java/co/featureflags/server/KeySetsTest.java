@@ -0,0 +1,83 @@
+package co.featureflags.server;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class KeySetsTest {
+
+    @Test
+    public void setsOnBothSidesOfThresholdHaveSameMembers() {
+        for (int size : new int[]{1, KeySets.COMPACT_THRESHOLD - 1, KeySets.COMPACT_THRESHOLD, KeySets.COMPACT_THRESHOLD * 3}) {
+            List<String> keys = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                keys.add("user-" + (i * 2));
+            }
+            KeySets.KeySet set = KeySets.of(keys);
+            assertEquals(size >= KeySets.COMPACT_THRESHOLD, set instanceof KeySets.CompactKeySet);
+
+            for (int i = 0; i < size; i++) {
+                assertTrue(set.contains("user-" + (i * 2)));
+                assertFalse(set.contains("user-" + (i * 2 + 1)));
+            }
+            assertFalse(set.contains(null));
+            assertFalse(set.contains(""));
+            assertEquals(new HashSet<>(keys), new HashSet<>(set.keys()));
+        }
+    }
+
+    @Test
+    public void duplicatesAndNullsAreDropped() {
+        for (KeySets.KeySet set : Arrays.asList(new KeySets.HashKeySet(Arrays.asList("b", null, "a", "b")),
+                new KeySets.CompactKeySet(Arrays.asList("b", null, "a", "b")))) {
+            assertEquals(2, set.keys().size());
+            assertEquals(new HashSet<>(Arrays.asList("a", "b")), new HashSet<>(set.keys()));
+            assertTrue(set.contains("a"));
+            assertFalse(set.contains(null));
+        }
+        assertSame(KeySets.EMPTY, KeySets.of(null));
+        assertSame(KeySets.EMPTY, KeySets.of(new ArrayList<>()));
+    }
+
+    @Test
+    public void keysOfSameHashCodeAreDistinguished() {
+        // "Aa" and "BB" have the same hash code, so do all the strings made of 13 of them
+        List<String> colliding = new ArrayList<>();
+        collide("", 13, colliding);
+        assertEquals(1, colliding.stream().mapToInt(String::hashCode).distinct().count());
+
+        List<String> keys = new ArrayList<>();
+        Set<String> members = new HashSet<>();
+        for (int i = 0; i < colliding.size(); i += 2) {
+            keys.add(colliding.get(i));
+            members.add(colliding.get(i));
+        }
+        for (int i = 0; keys.size() <= KeySets.COMPACT_THRESHOLD; i++) {
+            keys.add("user-" + i);
+        }
+        KeySets.KeySet set = KeySets.of(keys);
+        assertTrue(set instanceof KeySets.CompactKeySet);
+
+        for (String key : colliding) {
+            assertEquals(key, members.contains(key), set.contains(key));
+        }
+    }
+
+    private static void collide(String prefix, int blocks, List<String> keys) {
+        if (blocks == 0) {
+            keys.add(prefix);
+            return;
+        }
+        collide(prefix + "Aa", blocks - 1, keys);
+        collide(prefix + "BB", blocks - 1, keys);
+    }
+}
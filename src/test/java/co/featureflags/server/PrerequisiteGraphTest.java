@@ -0,0 +1,111 @@
+package co.featureflags.server;
+
+import co.featureflags.commons.model.FFCUser;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static co.featureflags.server.TestData.FALSE;
+import static co.featureflags.server.TestData.TRUE;
+import static co.featureflags.server.TestData.flag;
+import static co.featureflags.server.TestData.flagId;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PrerequisiteGraphTest {
+
+    private static final FFCUser USER = new FFCUser.Builder("user-1").userName("user-1").build();
+
+    @Test
+    public void prerequisitesComeFirst() {
+        PrerequisiteGraph graph = PrerequisiteGraph.build(Arrays.asList(
+                flag("a").prerequisite("b", TRUE).build(),
+                flag("b").prerequisite("c", TRUE).build(),
+                flag("c").build()), 1L);
+
+        assertEquals(Arrays.asList(flagId("c"), flagId("b"), flagId("a")), graph.order);
+        assertFalse(graph.hasCycles());
+    }
+
+    @Test
+    public void cyclesAreDetected() {
+        PrerequisiteGraph graph = PrerequisiteGraph.build(Arrays.asList(
+                flag("a").prerequisite("b", TRUE).build(),
+                flag("b").prerequisite("c", TRUE).build(),
+                flag("c").prerequisite("a", TRUE).build(),
+                flag("d").prerequisite("a", TRUE).build(),
+                flag("e").prerequisite("e", TRUE).build()), 1L);
+
+        assertTrue(graph.hasCycles());
+        assertTrue(graph.isCircular(flagId("a"), flagId("b")));
+        assertTrue(graph.isCircular(flagId("c"), flagId("a")));
+        // depending on a cycle is not being in it, and a flag being its own prerequisite is ignored
+        assertFalse(graph.isCircular(flagId("d"), flagId("a")));
+        assertFalse(graph.isCircular(flagId("e"), flagId("e")));
+        assertEquals(flagId("d"), graph.order.get(graph.order.size() - 2));
+    }
+
+    @Test
+    public void updateKeepsOrderIfPrerequisitesAreSame() {
+        PrerequisiteGraph graph = PrerequisiteGraph.build(Arrays.asList(
+                flag("a").prerequisite("b", TRUE).build(),
+                flag("b").build()), 1L);
+        PrerequisiteGraph updated = graph.update(flag("a").timestamp(2L).prerequisite("b", FALSE).disabled().build(), 2L);
+
+        assertEquals(2L, updated.version);
+        assertSame(graph.order, updated.order);
+    }
+
+    @Test
+    public void updateSortsAgainIfPrerequisitesChange() {
+        PrerequisiteGraph graph = PrerequisiteGraph.build(Arrays.asList(
+                flag("a").prerequisite("b", TRUE).build(),
+                flag("b").build()), 1L);
+
+        PrerequisiteGraph circular = graph.update(flag("b").timestamp(2L).prerequisite("a", TRUE).build(), 2L);
+        assertTrue(circular.isCircular(flagId("a"), flagId("b")));
+
+        PrerequisiteGraph added = circular.update(flag("c").build(), 3L);
+        assertTrue(added.order.contains(flagId("c")));
+
+        PrerequisiteGraph removed = added.update(new DataModel.ArchivedTimestampData(flagId("b"), 3L), 4L);
+        assertFalse(removed.hasCycles());
+        assertEquals(Arrays.asList(flagId("a"), flagId("c")), removed.order);
+    }
+
+    @Test
+    public void circularPrerequisiteFails() {
+        DataModel.FeatureFlag a = flag("a").prerequisite("b", TRUE).fallthrough(TestData.serve(TRUE)).build();
+        DataModel.FeatureFlag b = flag("b").prerequisite("a", TRUE).fallthrough(TestData.serve(TRUE)).build();
+        PrerequisiteGraph graph = PrerequisiteGraph.build(Arrays.asList(a, b), 1L);
+        Evaluator.Getter<DataModel.FeatureFlag> flags = id -> id.equals(a.getId()) ? a : id.equals(b.getId()) ? b : null;
+        Evaluator evaluator = new EvaluatorImp(flags,
+                id -> null,
+                new BucketCache(0),
+                new DecisionLogger(org.slf4j.helpers.NOPLogger.NOP_LOGGER, 1D, null),
+                () -> graph,
+                () -> AttributeSlots.EMPTY,
+                new EvalResultCache(0, null, () -> 1L, flags, id -> null),
+                new SegmentCache(0));
+
+        Evaluator.EvalResult result = evaluator.evaluate(a, USER, InsightTypes.NullEvent.INSTANCE);
+        assertEquals(Evaluator.REASON_PREREQUISITE_FAILED, result.getReason());
+        assertEquals("false", result.getValue());
+    }
+
+    @Test
+    public void clientDetectsCycleOfUpsertedFlag() {
+        TestData.TestClient test = new TestData.TestClient()
+                .init(flag("a").prerequisite("b", FALSE).fallthrough(TestData.serve(TRUE)).build(), flag("b").build());
+        assertTrue(test.client.boolVariation("a", USER, false));
+
+        // the prerequisite failed result is the variation of the flag when it's disabled
+        test.upsert(flag("b").timestamp(2L).prerequisite("a", TRUE).build());
+        assertFalse(test.client.boolVariation("a", USER, false));
+
+        test.upsert(flag("b").timestamp(3L).build());
+        assertTrue(test.client.boolVariation("a", USER, false));
+    }
+}
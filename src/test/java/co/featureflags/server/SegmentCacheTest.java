@@ -0,0 +1,84 @@
+package co.featureflags.server;
+
+import co.featureflags.commons.model.FFCUser;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static co.featureflags.server.TestData.TRUE;
+import static co.featureflags.server.TestData.clause;
+import static co.featureflags.server.TestData.flag;
+import static co.featureflags.server.TestData.rule;
+import static co.featureflags.server.TestData.segment;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentCacheTest {
+
+    private static final EvaluationPlan.SegmentMatcher NO_SEGMENT = (segmentId, user) -> false;
+
+    private static final FFCUser USER = new FFCUser.Builder("user-1").userName("user-1").email("user-1@example.com").build();
+
+    @Test
+    public void upsertedSegmentMisses() {
+        SegmentCache cache = new SegmentCache(100);
+        assertTrue(cache.isMatch(segment("segment", 1L, Collections.singletonList("user-1")).plan(), prepared(USER), NO_SEGMENT));
+        assertTrue(cache.isMatch(segment("segment", 1L, Collections.singletonList("user-1")).plan(), prepared(USER), NO_SEGMENT));
+        assertHits(cache, 1, 1);
+
+        assertFalse(cache.isMatch(segment("segment", 2L, Collections.emptyList()).plan(), prepared(USER), NO_SEGMENT));
+        assertHits(cache, 1, 2);
+    }
+
+    @Test
+    public void attributeReadBySegmentMisses() {
+        SegmentCache cache = new SegmentCache(100);
+        EvaluationPlan.Segment segment = segment("segment", 1L, null,
+                rule(null, clause("email", Evaluator.ENDS_WITH_CLAUSE, "@example.com"))).plan();
+        assertTrue(cache.isMatch(segment, prepared(USER), NO_SEGMENT));
+
+        FFCUser otherEmail = new FFCUser.Builder("user-1").userName("user-1").email("user-1@other.org").build();
+        assertFalse(cache.isMatch(segment, prepared(otherEmail), NO_SEGMENT));
+        assertHits(cache, 0, 2);
+
+        // an attribute read by no rule
+        FFCUser otherName = new FFCUser.Builder("user-1").userName("other").email("user-1@example.com").build();
+        assertTrue(cache.isMatch(segment, prepared(otherName), NO_SEGMENT));
+        assertHits(cache, 1, 2);
+    }
+
+    @Test
+    public void segmentOfSegmentsIsNotCached() {
+        SegmentCache cache = new SegmentCache(100);
+        EvaluationPlan.Segment segment = segment("segment", 1L, null,
+                rule(null, clause(Evaluator.IS_IN_SEGMENT_CLAUSE, Evaluator.IS_IN_SEGMENT_CLAUSE, "[\"other\"]"))).plan();
+        assertTrue(cache.isMatch(segment, prepared(USER), (segmentId, user) -> true));
+        assertFalse(cache.isMatch(segment, prepared(USER), NO_SEGMENT));
+        assertHits(cache, 0, 0);
+    }
+
+    @Test
+    public void clientMissesAfterSegmentUpsert() {
+        TestData.TestClient test = new TestData.TestClient(builder -> builder.segmentCacheSize(100))
+                .init(new DataModel.FeatureFlag[]{flag("a").rule(TRUE, clause(Evaluator.IS_IN_SEGMENT_CLAUSE, Evaluator.IS_IN_SEGMENT_CLAUSE, "[\"segment\"]")).build()},
+                        segment("segment", 1L, Collections.singletonList("user-1")));
+        assertTrue(test.client.boolVariation("a", USER, false));
+
+        test.upsert(segment("segment", 2L, Collections.emptyList()));
+        assertFalse(test.client.boolVariation("a", USER, false));
+
+        test.upsert(segment("segment", 3L, Collections.singletonList("user-1")));
+        assertTrue(test.client.boolVariation("a", USER, false));
+    }
+
+    private static PreparedUser prepared(FFCUser user) {
+        return new PreparedUser(user, AttributeSlots.EMPTY);
+    }
+
+    private static void assertHits(SegmentCache cache, long hits, long misses) {
+        Statistics.CacheStatistics statistics = cache.statistics();
+        assertEquals(hits, statistics.getHitCount());
+        assertEquals(misses, statistics.getMissCount());
+    }
+}
@@ -0,0 +1,238 @@
+package co.featureflags.server;
+
+import co.featureflags.server.exterior.DataStoreTypes;
+import co.featureflags.server.exterior.InsightProcessor;
+import co.featureflags.server.exterior.UpdateProcessor;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.function.UnaryOperator;
+
+/**
+ * Flags, segments and clients shared by the tests.
+ */
+final class TestData {
+
+    static final String ENV_SECRET = Base64.getEncoder()
+            .encodeToString("secret__account__project__env__key".getBytes(StandardCharsets.UTF_8));
+
+    static final DataModel.VariationOption TRUE = new DataModel.VariationOption(1, 1, "true");
+    static final DataModel.VariationOption FALSE = new DataModel.VariationOption(2, 2, "false");
+
+    private TestData() {
+        super();
+    }
+
+    static String flagId(String keyName) {
+        return "FF__account__project__env__" + keyName;
+    }
+
+    static List<DataModel.VariationOptionPercentageRollout> serve(DataModel.VariationOption option) {
+        return Collections.singletonList(new DataModel.VariationOptionPercentageRollout(null, Arrays.asList(0D, 1D), option));
+    }
+
+    static DataModel.TargetRule rule(DataModel.VariationOption option, DataModel.RuleItem... clauses) {
+        return new DataModel.TargetRule("rule", "rule", null, Arrays.asList(clauses), serve(option));
+    }
+
+    static DataModel.RuleItem clause(String property, String operation, String value) {
+        return new DataModel.RuleItem(property, operation, value);
+    }
+
+    static DataModel.FeatureFlagPrerequisite prerequisite(String keyName, DataModel.VariationOption option) {
+        return new DataModel.FeatureFlagPrerequisite(flagId(keyName), option);
+    }
+
+    static DataModel.TargetIndividuals target(DataModel.VariationOption option, String... userKeys) {
+        List<DataModel.FeatureFlagTargetIndividualUser> users = new ArrayList<>();
+        for (String key : userKeys) {
+            users.add(new DataModel.FeatureFlagTargetIndividualUser(key, key, key, null));
+        }
+        return new DataModel.TargetIndividuals(users, option);
+    }
+
+    /**
+     * a boolean flag serving false to the users not matched by the rules
+     */
+    static FlagBuilder flag(String keyName) {
+        return new FlagBuilder(keyName);
+    }
+
+    static DataModel.Segment segment(String id, long timestamp, List<String> included, DataModel.TargetRule... rules) {
+        return new DataModel.Segment(id, false, timestamp, included, null, Arrays.asList(rules));
+    }
+
+    static DataStoreTypes.Item item(DataModel.TimestampData data) {
+        return new DataStoreTypes.Item(data);
+    }
+
+    static final class FlagBuilder {
+        private final String keyName;
+        private long timestamp = 1L;
+        private boolean disabled = false;
+        private final List<DataModel.FeatureFlagPrerequisite> prerequisites = new ArrayList<>();
+        private final List<DataModel.TargetIndividuals> targets = new ArrayList<>();
+        private final List<DataModel.TargetRule> rules = new ArrayList<>();
+        private List<DataModel.VariationOptionPercentageRollout> fallthrough = serve(FALSE);
+        private List<DataModel.VariationOption> variations = Arrays.asList(TRUE, FALSE);
+        private DataModel.VariationOption disabledVariation = FALSE;
+
+        private FlagBuilder(String keyName) {
+            this.keyName = keyName;
+        }
+
+        FlagBuilder timestamp(long timestamp) {
+            this.timestamp = timestamp;
+            return this;
+        }
+
+        FlagBuilder disabled() {
+            this.disabled = true;
+            return this;
+        }
+
+        FlagBuilder prerequisite(String keyName, DataModel.VariationOption option) {
+            prerequisites.add(TestData.prerequisite(keyName, option));
+            return this;
+        }
+
+        FlagBuilder target(DataModel.VariationOption option, String... userKeys) {
+            targets.add(TestData.target(option, userKeys));
+            return this;
+        }
+
+        FlagBuilder rule(DataModel.VariationOption option, DataModel.RuleItem... clauses) {
+            rules.add(TestData.rule(option, clauses));
+            return this;
+        }
+
+        FlagBuilder fallthrough(List<DataModel.VariationOptionPercentageRollout> fallthrough) {
+            this.fallthrough = fallthrough;
+            return this;
+        }
+
+        FlagBuilder variations(DataModel.VariationOption disabledVariation, DataModel.VariationOption... variations) {
+            this.disabledVariation = disabledVariation;
+            this.variations = Arrays.asList(variations);
+            return this;
+        }
+
+        DataModel.FeatureFlag build() {
+            DataModel.FeatureFlagBasicInfo info = new DataModel.FeatureFlagBasicInfo(flagId(keyName),
+                    keyName,
+                    1,
+                    keyName,
+                    disabled ? Evaluator.FLAG_DISABLE_STATS : Evaluator.FLAG_ENABLE_STATS,
+                    null,
+                    null,
+                    fallthrough,
+                    disabledVariation);
+            return new DataModel.FeatureFlag(flagId(keyName),
+                    false,
+                    timestamp,
+                    null,
+                    info,
+                    new ArrayList<>(prerequisites),
+                    new ArrayList<>(rules),
+                    new ArrayList<>(targets),
+                    variations);
+        }
+    }
+
+    /**
+     * A client whose data are pushed by the test and whose insight events are recorded
+     */
+    static final class TestClient {
+        final FFCClientImp client;
+        final List<InsightTypes.Event> events = Collections.synchronizedList(new ArrayList<>());
+        private Status.DataUpdator updator;
+        private long version = 0L;
+
+        TestClient() {
+            this(UnaryOperator.identity());
+        }
+
+        TestClient(UnaryOperator<FFCConfig.Builder> configuration) {
+            FFCConfig.Builder builder = new FFCConfig.Builder()
+                    .startWaitTime(Duration.ZERO)
+                    .updateProcessorFactory((context, dataUpdator) -> {
+                        this.updator = dataUpdator;
+                        return new UpdateProcessor() {
+                            @Override
+                            public Future<Boolean> start() {
+                                return CompletableFuture.completedFuture(true);
+                            }
+
+                            @Override
+                            public boolean isInitialized() {
+                                return true;
+                            }
+
+                            @Override
+                            public void close() {
+                            }
+                        };
+                    })
+                    .insightProcessorFactory(context -> new InsightProcessor() {
+                        @Override
+                        public void send(InsightTypes.Event event) {
+                            events.add(event);
+                        }
+
+                        @Override
+                        public void flush() {
+                        }
+
+                        @Override
+                        public void close() {
+                        }
+                    });
+            this.client = new FFCClientImp(ENV_SECRET, configuration.apply(builder).build());
+        }
+
+        TestClient init(DataModel.FeatureFlag[] flags, DataModel.Segment... segments) {
+            Map<String, DataStoreTypes.Item> flagItems = new HashMap<>();
+            for (DataModel.FeatureFlag flag : flags) {
+                flagItems.put(flag.getId(), item(flag));
+            }
+            Map<String, DataStoreTypes.Item> segmentItems = new HashMap<>();
+            for (DataModel.Segment segment : segments) {
+                segmentItems.put(segment.getId(), item(segment));
+            }
+            Map<DataStoreTypes.Category, Map<String, DataStoreTypes.Item>> all = new HashMap<>();
+            all.put(DataStoreTypes.FEATURES, flagItems);
+            all.put(DataStoreTypes.SEGMENTS, segmentItems);
+            updator.init(all, ++version);
+            return this;
+        }
+
+        TestClient init(DataModel.FeatureFlag... flags) {
+            return init(flags, new DataModel.Segment[0]);
+        }
+
+        TestClient upsert(DataModel.FeatureFlag flag) {
+            updator.upsert(DataStoreTypes.FEATURES, flag.getId(), item(flag), ++version);
+            return this;
+        }
+
+        TestClient upsert(DataModel.Segment segment) {
+            updator.upsert(DataStoreTypes.SEGMENTS, segment.getId(), item(segment), ++version);
+            return this;
+        }
+
+        TestClient archive(DataModel.FeatureFlag flag) {
+            DataModel.TimestampData archived = new DataModel.ArchivedTimestampData(flag.getId(), flag.getTimestamp() + 1);
+            updator.upsert(DataStoreTypes.FEATURES, flag.getId(), item(archived), ++version);
+            return this;
+        }
+    }
+}
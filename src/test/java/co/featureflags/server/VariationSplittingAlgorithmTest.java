@@ -0,0 +1,60 @@
+package co.featureflags.server;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Golden vectors of the bucketing percentages, computed by the former implementation based on
+ * {@link java.security.MessageDigest}: the users must keep their variations across versions of the SDK.
+ */
+public class VariationSplittingAlgorithmTest {
+
+    // key -> percentage; the key lengths around 56 and 64 bytes cover the padding of MD5 in one or two blocks,
+    // the non-ASCII keys take the path of the digest per thread, their chars are hashed as '?'
+    private static final Object[][] VECTORS = {
+        {key(0), 0.3004114832729101},
+        {key(1), 0.5510939303785563},
+        {key(55), 0.6677973698824644},
+        {key(56), 0.08079386269673705},
+        {key(57), 0.6164789469912648},
+        {key(63), 0.43121879966929555},
+        {key(64), 0.5196283184923232},
+        {key(65), 0.9212386342696846},
+        {key(119), 0.36748079350218177},
+        {key(120), 0.5785864037461579},
+        {key(128), 0.16198393562808633},
+        {key(1000), 0.2870874651707709},
+        {"u1", 0.27110387198626995},
+        {"user-42", 0.06043070089071989},
+        {"0d6b7a48-6b3c-4c0a-9f1e-5a3e2c1d0b9f", 0.587008738424629},
+        {"test-user@featureflag.co", 0.13302054023370147},
+        {"dXNlci0xMjM=", 0.10774340853095055},
+        {"\u00e9", 0.894386984873563},
+        {"\u00fc-key", 0.6320154517889023},
+        {"\u7528\u6237-1", 0.9552563023753464},
+        {"\u65e5\u672c\u8a9e\u306e\u30e6\u30fc\u30b6\u30fc", 0.4286028519272804},
+        {"\ud83d\ude00", 0.894386984873563},
+        {"na\u00efve-abcdefghijklmnopqrstuvwxyz0123456789abcdefghijklmnopqrstuvwx", 0.37027773447334766}
+    };
+
+    // a key of the given length made of ASCII letters and digits
+    private static String key(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append("abcdefghijklmnopqrstuvwxyz0123456789".charAt(i % 36));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void percentageOfKeyMatchesGoldenVectors() {
+        for (Object[] vector : VECTORS) {
+            String key = (String) vector[0];
+            assertEquals("key of length " + key.length() + ": " + key,
+                    (Double) vector[1],
+                    VariationSplittingAlgorithm.percentageOfKey(key),
+                    0D);
+        }
+    }
+}